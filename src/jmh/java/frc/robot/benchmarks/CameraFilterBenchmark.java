@@ -0,0 +1,66 @@
+package frc.robot.benchmarks;
+
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import frc.robot.subsystems.Vision.Camera;
+import frc.robot.subsystems.Vision.CameraIO;
+import frc.robot.subsystems.Vision.CameraIO.PoseObservation;
+import frc.robot.subsystems.Vision.VisionSubsystem.PoseAndTimestampAndDev;
+
+/*
+ * Camera's per loop filtering. The IO hands back the same set of observations every loop, a mix of
+ * good ones, ambiguous ones and ones off the field.
+ */
+@State(Scope.Thread)
+public class CameraFilterBenchmark {
+    /* Frames per loop, 60fps camera at 50Hz loop is 1-2 */
+    @Param({"1", "4"})
+    public int observationsPerLoop;
+
+    private Camera camera;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        HAL.initialize(500, 0);
+
+        PoseObservation[] observations = new PoseObservation[observationsPerLoop];
+        for (int i = 0; i < observations.length; i++) {
+            switch (i % 3) {
+                case 0:
+                    observations[i] = new PoseObservation(i * 0.016, new Pose3d(3.0, 4.0, 0.0, new Rotation3d()), 0.05, 2, 2.5, 0.3);
+                    break;
+                case 1:
+                    observations[i] = new PoseObservation(i * 0.016, new Pose3d(3.0, 4.0, 0.0, new Rotation3d()), 0.5, 1, 4.0, 0.0);
+                    break;
+                default:
+                    observations[i] = new PoseObservation(i * 0.016, new Pose3d(-1.0, 4.0, 0.3, new Rotation3d()), 0.05, 2, 6.0, 0.5);
+                    break;
+            }
+        }
+
+        camera = new Camera("Benchmark", new CameraIO() {
+            @Override
+            public void updateInputs(CameraIOInputs inputs) {
+                inputs.connected = true;
+                inputs.poseObservations = observations;
+            }
+        });
+    }
+
+    @Benchmark
+    public List<PoseAndTimestampAndDev> updateEstimate() {
+        camera.updateInputs();
+        camera.updateEstimate();
+        return camera.getEstimates();
+    }
+}
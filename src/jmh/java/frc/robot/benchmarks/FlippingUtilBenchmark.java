@@ -0,0 +1,41 @@
+package frc.robot.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import frc.lib.util.FlippingUtil;
+
+@State(Scope.Thread)
+public class FlippingUtilBenchmark {
+    private Pose2d pose;
+    private Translation2d translation;
+    private Rotation2d rotation;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        pose = new Pose2d(3.2, 5.1, Rotation2d.fromDegrees(35));
+        translation = pose.getTranslation();
+        rotation = pose.getRotation();
+    }
+
+    @Benchmark
+    public Pose2d flipFieldPose() {
+        return FlippingUtil.flipFieldPose(pose);
+    }
+
+    @Benchmark
+    public Translation2d flipFieldPosition() {
+        return FlippingUtil.flipFieldPosition(translation);
+    }
+
+    @Benchmark
+    public Rotation2d flipFieldRotation() {
+        return FlippingUtil.flipFieldRotation(rotation);
+    }
+}
@@ -0,0 +1,50 @@
+package frc.robot.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.robot.Constants;
+
+/* WPILib kinematics through Constants.Swerve.swerveKinematics */
+@State(Scope.Thread)
+public class KinematicsBenchmark {
+    private ChassisSpeeds speeds;
+    private SwerveModuleState[] states;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        speeds = new ChassisSpeeds(2.5, -1.0, 1.5);
+        states = new SwerveModuleState[] {
+            new SwerveModuleState(3.0, Rotation2d.fromDegrees(10)),
+            new SwerveModuleState(2.5, Rotation2d.fromDegrees(-20)),
+            new SwerveModuleState(3.5, Rotation2d.fromDegrees(45)),
+            new SwerveModuleState(2.0, Rotation2d.fromDegrees(-90))
+        };
+    }
+
+    @Benchmark
+    public SwerveModuleState[] toSwerveModuleStates() {
+        return Constants.Swerve.swerveKinematics.toSwerveModuleStates(speeds);
+    }
+
+    @Benchmark
+    public ChassisSpeeds toChassisSpeeds() {
+        return Constants.Swerve.swerveKinematics.toChassisSpeeds(states);
+    }
+
+    /* What the old drive() did every loop */
+    @Benchmark
+    public SwerveModuleState[] fieldRelativeToDesaturatedStates() {
+        SwerveModuleState[] result = Constants.Swerve.swerveKinematics.toSwerveModuleStates(
+            ChassisSpeeds.fromFieldRelativeSpeeds(speeds, Rotation2d.fromDegrees(30)));
+        SwerveDriveKinematics.desaturateWheelSpeeds(result, Constants.Swerve.maxSpeed);
+        return result;
+    }
+}
@@ -0,0 +1,102 @@
+package frc.robot.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import frc.lib.util.SwerveEKFPoseEstimator;
+import frc.lib.util.SwervePoseEstimator;
+import frc.lib.util.WPILibSwervePoseEstimator;
+import frc.robot.Constants;
+import frc.robot.Constants.Swerve.PoseEstimatorType;
+
+/*
+ * The pose estimators the way Swerve.periodic() uses them: one odometry update per sample from the
+ * odometry thread, and vision measurements from the past. The WPILib estimator replays its odometry
+ * history for every measurement, so its cost should grow with the latency, the EKF's shouldn't.
+ */
+@State(Scope.Thread)
+public class PoseEstimatorBenchmark {
+    /* Odometry thread rate */
+    private static final double SAMPLE_PERIOD = 1.0 / Constants.Swerve.odometryFrequency;
+
+    @Param({"WPILIB", "EKF"})
+    public PoseEstimatorType estimatorType;
+
+    /* Seconds, how old the vision measurement is */
+    @Param({"0.05", "0.1", "0.3"})
+    public double visionLatency;
+
+    private SwervePoseEstimator estimator;
+    private final SwerveModulePosition[] positions = new SwerveModulePosition[4];
+
+    private double timestamp = 0.0;
+    private double distance = 0.0;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = new SwerveModulePosition();
+        }
+        if (estimatorType == PoseEstimatorType.EKF) {
+            estimator = new SwerveEKFPoseEstimator(
+                Constants.Swerve.moduleTranslations,
+                (int) Math.ceil(2.0 / SAMPLE_PERIOD),
+                Constants.Swerve.odometryXYVariancePerMeter,
+                Constants.Swerve.odometryHeadingVariancePerRadian,
+                new Rotation2d(),
+                positions,
+                new Pose2d()
+            );
+        } else {
+            estimator = new WPILibSwervePoseEstimator(
+                Constants.Swerve.swerveKinematics,
+                new Rotation2d(),
+                positions,
+                new Pose2d(),
+                VecBuilder.fill(0.1, 0.1, 0.1),
+                VecBuilder.fill(0.45, 0.45, 6)
+            );
+        }
+        timestamp = 0.0;
+        distance = 0.0;
+
+        /* Fill the history buffer so vision replays a realistic amount of it */
+        for (int i = 0; i < 2.0 / SAMPLE_PERIOD; i++) {
+            step();
+        }
+    }
+
+    private Pose2d step() {
+        timestamp += SAMPLE_PERIOD;
+        distance += 3.0 * SAMPLE_PERIOD;
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = new SwerveModulePosition(distance, Rotation2d.kZero);
+        }
+        return estimator.updateWithTime(timestamp, Rotation2d.fromRadians(timestamp * 0.5), positions);
+    }
+
+    @Benchmark
+    public Pose2d odometryUpdate() {
+        return step();
+    }
+
+    @Benchmark
+    public Pose2d visionReplay() {
+        step();
+        estimator.addVisionMeasurement(
+            new Pose2d(distance - 0.3, 0.05, Rotation2d.fromRadians(timestamp * 0.5)),
+            timestamp - visionLatency,
+            0.45,
+            6.0
+        );
+        return estimator.getEstimatedPosition();
+    }
+}
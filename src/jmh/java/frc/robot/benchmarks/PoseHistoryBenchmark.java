@@ -0,0 +1,72 @@
+package frc.robot.benchmarks;
+
+import java.util.Optional;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.interpolation.TimeInterpolatableBuffer;
+import frc.lib.util.PoseHistory;
+import frc.robot.Constants;
+
+/*
+ * PoseHistory against WPILib's TimeInterpolatableBuffer (what SwerveDrivePoseEstimator uses), both
+ * holding 2 seconds of odometry samples. Inserts are one odometry sample, lookups are ~100ms back
+ * like a vision measurement.
+ */
+@State(Scope.Thread)
+public class PoseHistoryBenchmark {
+    private static final double HISTORY_SECONDS = 2.0;
+    private static final double SAMPLE_PERIOD = 1.0 / Constants.Swerve.odometryFrequency;
+    private static final double LOOKUP_AGE = 0.1;
+
+    private TimeInterpolatableBuffer<Pose2d> buffer;
+    private PoseHistory history;
+    private final double[] out = new double[3];
+
+    private double timestamp = 0.0;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        buffer = TimeInterpolatableBuffer.createBuffer(HISTORY_SECONDS);
+        history = new PoseHistory((int) Math.ceil(HISTORY_SECONDS / SAMPLE_PERIOD));
+        timestamp = 0.0;
+
+        for (int i = 0; i < HISTORY_SECONDS / SAMPLE_PERIOD; i++) {
+            timestamp += SAMPLE_PERIOD;
+            buffer.addSample(timestamp, new Pose2d(timestamp * 3.0, 1.0, Rotation2d.fromRadians(timestamp)));
+            history.add(timestamp, timestamp * 3.0, 1.0, timestamp);
+        }
+    }
+
+    @Benchmark
+    public Pose2d bufferInsert() {
+        timestamp += SAMPLE_PERIOD;
+        Pose2d pose = new Pose2d(timestamp * 3.0, 1.0, Rotation2d.fromRadians(timestamp));
+        buffer.addSample(timestamp, pose);
+        return pose;
+    }
+
+    @Benchmark
+    public double historyInsert() {
+        timestamp += SAMPLE_PERIOD;
+        history.add(timestamp, timestamp * 3.0, 1.0, timestamp);
+        return timestamp;
+    }
+
+    @Benchmark
+    public Optional<Pose2d> bufferLookup() {
+        return buffer.getSample(timestamp - LOOKUP_AGE + SAMPLE_PERIOD * 0.37);
+    }
+
+    @Benchmark
+    public double[] historyLookup() {
+        history.sample(timestamp - LOOKUP_AGE + SAMPLE_PERIOD * 0.37, out);
+        return out;
+    }
+}
@@ -0,0 +1,80 @@
+package frc.robot.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Translation2d;
+import frc.robot.Constants;
+import frc.robot.ModuleIO;
+import frc.robot.subsystems.GyroIO;
+import frc.robot.subsystems.Swerve;
+import frc.robot.subsystems.Vision.Camera;
+import frc.robot.subsystems.Vision.VisionSubsystem;
+
+/* Swerve.drive() with empty IO layers, so this is only the chassis to module math */
+@State(Scope.Thread)
+public class SwerveDriveBenchmark {
+    private Swerve swerve;
+
+    /* Changes every call so nothing gets constant folded */
+    private int tick = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        HAL.initialize(500, 0);
+
+        swerve = new Swerve(
+            new GyroIO() {},
+            new ModuleIO() {},
+            new ModuleIO() {},
+            new ModuleIO() {},
+            new ModuleIO() {},
+            new VisionSubsystem(new Camera[0])
+        );
+    }
+
+    private double input() {
+        tick++;
+        return Math.sin(tick * 0.01);
+    }
+
+    @Benchmark
+    public void drivePrimitiveFieldRelative() {
+        double x = input();
+        swerve.drive(
+            x * Constants.Swerve.maxSpeed,
+            -x * Constants.Swerve.maxSpeed,
+            x * Constants.Swerve.maxAngularVelocity,
+            true,
+            true
+        );
+    }
+
+    @Benchmark
+    public void drivePrimitiveRobotRelative() {
+        double x = input();
+        swerve.drive(
+            x * Constants.Swerve.maxSpeed,
+            -x * Constants.Swerve.maxSpeed,
+            x * Constants.Swerve.maxAngularVelocity,
+            false,
+            false
+        );
+    }
+
+    /* The old entry point, allocates the Translation2d like TeleopSwerve used to */
+    @Benchmark
+    public void driveTranslation() {
+        double x = input();
+        swerve.drive(
+            new Translation2d(x, -x).times(Constants.Swerve.maxSpeed),
+            x * Constants.Swerve.maxAngularVelocity,
+            true,
+            true
+        );
+    }
+}
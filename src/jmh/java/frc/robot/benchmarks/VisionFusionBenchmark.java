@@ -0,0 +1,113 @@
+package frc.robot.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import frc.robot.Constants;
+import frc.robot.subsystems.Vision.VisionFusion;
+import frc.robot.subsystems.Vision.VisionSubsystem.PoseAndTimestampAndDev;
+
+/*
+ * One Swerve.periodic() worth of pose estimation: the odometry samples from one main loop, then every
+ * camera's measurement from ~100ms ago, either one addVisionMeasurement() each or fused into one first.
+ */
+@State(Scope.Thread)
+public class VisionFusionBenchmark {
+    private static final double SAMPLE_PERIOD = 1.0 / Constants.Swerve.odometryFrequency;
+    private static final int SAMPLES_PER_LOOP = (int) Math.round(0.02 / SAMPLE_PERIOD);
+    private static final double VISION_LATENCY = 0.1;
+
+    @Param({"false", "true"})
+    public boolean fuse;
+
+    @Param({"1", "4"})
+    public int cameras;
+
+    private SwerveDrivePoseEstimator estimator;
+    private final SwerveModulePosition[] positions = new SwerveModulePosition[4];
+    private final VisionFusion fusion = new VisionFusion(Constants.PoseFilter.FUSION_WINDOW_SECONDS);
+    private final List<PoseAndTimestampAndDev> measurements = new ArrayList<>();
+    private final List<PoseAndTimestampAndDev> fused = new ArrayList<>();
+    private final Matrix<N3, N1> stdDevs = VecBuilder.fill(0.45, 0.45, Constants.PoseFilter.HEADING_STD_DEV);
+
+    private double timestamp = 0.0;
+    private double distance = 0.0;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = new SwerveModulePosition();
+        }
+        estimator = new SwerveDrivePoseEstimator(
+            Constants.Swerve.swerveKinematics,
+            new Rotation2d(),
+            positions,
+            new Pose2d(),
+            VecBuilder.fill(0.1, 0.1, 0.1),
+            VecBuilder.fill(0.45, 0.45, Constants.PoseFilter.HEADING_STD_DEV)
+        );
+        timestamp = 0.0;
+        distance = 0.0;
+
+        /* Fill the history buffer so vision replays a realistic amount of it */
+        for (int i = 0; i < 2.0 / SAMPLE_PERIOD; i++) {
+            step();
+        }
+    }
+
+    private void step() {
+        timestamp += SAMPLE_PERIOD;
+        distance += 3.0 * SAMPLE_PERIOD;
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = new SwerveModulePosition(distance, Rotation2d.kZero);
+        }
+        estimator.updateWithTime(timestamp, Rotation2d.fromRadians(timestamp * 0.5), positions);
+    }
+
+    @Benchmark
+    public Pose2d loop() {
+        for (int i = 0; i < SAMPLES_PER_LOOP; i++) {
+            step();
+        }
+
+        /* Cameras aren't synced, their frames land a few ms apart */
+        measurements.clear();
+        for (int i = 0; i < cameras; i++) {
+            measurements.add(new PoseAndTimestampAndDev(
+                new Pose2d(distance - 0.3 + i * 0.01, 0.05, Rotation2d.fromRadians(timestamp * 0.5)),
+                timestamp - VISION_LATENCY + i * 0.004,
+                0.1 + i * 0.05,
+                2,
+                3.0,
+                i
+            ));
+        }
+
+        List<PoseAndTimestampAndDev> toApply = measurements;
+        if (fuse) {
+            fusion.fuse(measurements, fused);
+            toApply = fused;
+        }
+        for (PoseAndTimestampAndDev measurement : toApply) {
+            stdDevs.set(0, 0, measurement.getStdDev());
+            stdDevs.set(1, 0, measurement.getStdDev());
+            estimator.addVisionMeasurement(measurement.getPose(), measurement.getTimestamp(), stdDevs);
+        }
+        return estimator.getEstimatedPosition();
+    }
+}
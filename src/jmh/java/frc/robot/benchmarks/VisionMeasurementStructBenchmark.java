@@ -0,0 +1,55 @@
+package frc.robot.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.util.struct.StructBuffer;
+import frc.robot.subsystems.Vision.VisionSubsystem.PoseAndTimestampAndDev;
+
+/* Packing and unpacking vision measurements through their Struct */
+@State(Scope.Thread)
+public class VisionMeasurementStructBenchmark {
+    private PoseAndTimestampAndDev measurement;
+    private PoseAndTimestampAndDev[] measurements;
+
+    private ByteBuffer buffer;
+    private StructBuffer<PoseAndTimestampAndDev> structBuffer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        measurement = new PoseAndTimestampAndDev(new Pose2d(3.0, 4.0, Rotation2d.fromDegrees(20)), 12.345, 0.3, 2, 2.5, 1);
+        measurements = new PoseAndTimestampAndDev[] {measurement, measurement, measurement, measurement};
+
+        buffer = ByteBuffer.allocate(PoseAndTimestampAndDev.struct.getSize()).order(ByteOrder.LITTLE_ENDIAN);
+        structBuffer = StructBuffer.create(PoseAndTimestampAndDev.struct);
+    }
+
+    @Benchmark
+    public ByteBuffer pack() {
+        buffer.clear();
+        PoseAndTimestampAndDev.struct.pack(buffer, measurement);
+        return buffer;
+    }
+
+    @Benchmark
+    public PoseAndTimestampAndDev packAndUnpack() {
+        buffer.clear();
+        PoseAndTimestampAndDev.struct.pack(buffer, measurement);
+        buffer.flip();
+        return PoseAndTimestampAndDev.struct.unpack(buffer);
+    }
+
+    /* What the logger and NT publisher do with a loop's worth of measurements */
+    @Benchmark
+    public ByteBuffer writeArray() {
+        return structBuffer.writeArray(measurements);
+    }
+}
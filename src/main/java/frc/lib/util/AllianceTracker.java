@@ -0,0 +1,81 @@
+package frc.lib.util;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import edu.wpi.first.util.WPIUtilJNI;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+
+/*
+ * Keeps track of the alliance without anything having to ask DriverStation every loop.
+ *
+ * A background thread wakes up whenever new driver station data comes in, and only when the
+ * alliance actually changes does it update isRedAlliance() and call the listeners. The alliance
+ * only really changes while disabled (when the FMS connects), so listeners should use that to swap
+ * precomputed values rather than doing real work.
+ */
+public final class AllianceTracker {
+    private static volatile boolean isRedAlliance = false;
+    private static final List<Consumer<Boolean>> listeners = new CopyOnWriteArrayList<>();
+    private static Thread thread = null;
+
+    private AllianceTracker() {}
+
+    /**
+     * Starts watching for alliance changes, call once from robotInit
+     */
+    public static synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(AllianceTracker::run, "AllianceTracker");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void run() {
+        int event = WPIUtilJNI.createEvent(false, false);
+        DriverStation.provideRefreshedDataEventHandle(event);
+
+        update();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                WPIUtilJNI.waitForObject(event);
+            } catch (InterruptedException e) {
+                break;
+            }
+            update();
+        }
+
+        DriverStation.removeRefreshedDataEventHandle(event);
+        WPIUtilJNI.destroyEvent(event);
+    }
+
+    private static void update() {
+        boolean red = DriverStation.getAlliance().orElse(Alliance.Blue) == Alliance.Red;
+        if (red != isRedAlliance) {
+            isRedAlliance = red;
+            for (Consumer<Boolean> listener : listeners) {
+                listener.accept(red);
+            }
+        }
+    }
+
+    /**
+     * @return If we're on red, blue if the driver station hasn't said yet
+     */
+    public static boolean isRedAlliance() {
+        return isRedAlliance;
+    }
+
+    /**
+     * Called from the tracker's thread with true for red whenever the alliance changes, and once
+     * right away with the current alliance
+     */
+    public static void addListener(Consumer<Boolean> listener) {
+        listeners.add(listener);
+        listener.accept(isRedAlliance);
+    }
+}
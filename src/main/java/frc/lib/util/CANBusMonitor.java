@@ -0,0 +1,70 @@
+package frc.lib.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.littletonrobotics.junction.Logger;
+
+import com.ctre.phoenix6.CANBus;
+import com.ctre.phoenix6.CANBus.CANBusStatus;
+
+import edu.wpi.first.networktables.DoublePublisher;
+import frc.lib.util.Telemetry.Rate;
+
+/*
+ * Reports how busy each CAN bus the drivetrain uses is, so there's a number to look at before raising
+ * signal rates or the odometry frequency. Devices add their bus with track(), and periodic() logs
+ * utilization and error counters once a second.
+ */
+public final class CANBusMonitor {
+    private static final List<TrackedBus> buses = new ArrayList<>();
+
+    private static final class TrackedBus {
+        final CANBus bus;
+        final String key;
+        final DoublePublisher utilizationPublisher;
+
+        TrackedBus(CANBus bus) {
+            this.bus = bus;
+            String name = bus.getName().isEmpty() ? "rio" : bus.getName();
+            this.key = "CAN/" + name + "/";
+            this.utilizationPublisher = Telemetry.doublePublisher("CAN " + name + " Utilization");
+        }
+    }
+
+    private CANBusMonitor() {}
+
+    /**
+     * Adds a bus to the report, buses that are already tracked are ignored
+     */
+    public static synchronized void track(CANBus bus) {
+        for (TrackedBus tracked : buses) {
+            if (tracked.bus.getName().equals(bus.getName())) {
+                return;
+            }
+        }
+        buses.add(new TrackedBus(bus));
+    }
+
+    /** Call once per loop from robotPeriodic, only does anything on the SLOW telemetry tier */
+    public static synchronized void periodic() {
+        if (!Telemetry.isDue(Rate.SLOW)) {
+            return;
+        }
+        for (TrackedBus tracked : buses) {
+            CANBusStatus status = tracked.bus.getStatus();
+            if (!status.Status.isOK()) {
+                Logger.recordOutput(tracked.key + "Status", status.Status.getName());
+                continue;
+            }
+            double utilizationPercent = status.BusUtilization * 100.0;
+            Logger.recordOutput(tracked.key + "Status", status.Status.getName());
+            Logger.recordOutput(tracked.key + "UtilizationPercent", utilizationPercent);
+            Logger.recordOutput(tracked.key + "BusOffCount", status.BusOffCount);
+            Logger.recordOutput(tracked.key + "TxFullCount", status.TxFullCount);
+            Logger.recordOutput(tracked.key + "ReceiveErrorCount", status.REC);
+            Logger.recordOutput(tracked.key + "TransmitErrorCount", status.TEC);
+            tracked.utilizationPublisher.set(utilizationPercent);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package frc.lib.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import org.littletonrobotics.junction.Logger;
+
+import com.ctre.phoenix6.StatusCode;
+import com.ctre.phoenix6.configs.CANcoderConfiguration;
+import com.ctre.phoenix6.configs.Pigeon2Configuration;
+import com.ctre.phoenix6.configs.TalonFXConfiguration;
+import com.ctre.phoenix6.hardware.CANcoder;
+import com.ctre.phoenix6.hardware.Pigeon2;
+import com.ctre.phoenix6.hardware.TalonFX;
+
+import edu.wpi.first.wpilibj.DriverStation;
+
+/*
+ * Configures CTRE devices in parallel at boot instead of one after another.
+ *
+ * Each device's current config is read back first and the apply is skipped if it already
+ * matches, otherwise the apply is retried a few times. Devices store configs at lower precision
+ * than a double, so numbers only have to match within READ_BACK_TOLERANCE. Only the fields the
+ * drivetrain configs use are compared, if something else was changed on the device (e.g. from
+ * Tuner) and these still match, it's left alone. Call awaitAll() before using the devices,
+ * it waits for everything and logs how long each device took under DeviceConfig/.
+ *
+ * Anything that has to happen after the configs are on the devices (signal rates, bus utilization
+ * optimization) goes in afterAll(), awaitAll() runs it once every apply and afterApply is done.
+ */
+public final class DeviceConfigurator {
+    private static final double TIMEOUT_SECONDS = 0.1;
+    private static final int MAX_ATTEMPTS = 5;
+    /* Relative, or absolute for values under 1 */
+    private static final double READ_BACK_TOLERANCE = 1e-3;
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "DeviceConfigurator");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final List<Future<Result>> pending = new ArrayList<>();
+    private static final List<Runnable> afterAllActions = new ArrayList<>();
+    private static long firstSubmitNanos = 0;
+
+    private record Result(String device, boolean ok, boolean skipped, int attempts, StatusCode status, double millis) {}
+
+    private DeviceConfigurator() {}
+
+    /**
+     * @param afterApply Runs once the config is on the device (e.g. setting positions), can be null
+     */
+    public static void configure(TalonFX device, TalonFXConfiguration config, Runnable afterApply) {
+        var configurator = device.getConfigurator();
+        submit(
+            "TalonFX " + device.getDeviceID(),
+            () -> {
+                TalonFXConfiguration current = new TalonFXConfiguration();
+                return configurator.refresh(current, TIMEOUT_SECONDS).isOK() && matches(current, config);
+            },
+            () -> configurator.apply(config, TIMEOUT_SECONDS),
+            afterApply
+        );
+    }
+
+    public static void configure(CANcoder device, CANcoderConfiguration config, Runnable afterApply) {
+        var configurator = device.getConfigurator();
+        submit(
+            "CANcoder " + device.getDeviceID(),
+            () -> {
+                CANcoderConfiguration current = new CANcoderConfiguration();
+                return configurator.refresh(current, TIMEOUT_SECONDS).isOK() && matches(current, config);
+            },
+            () -> configurator.apply(config, TIMEOUT_SECONDS),
+            afterApply
+        );
+    }
+
+    public static void configure(Pigeon2 device, Pigeon2Configuration config, Runnable afterApply) {
+        var configurator = device.getConfigurator();
+        submit(
+            "Pigeon2 " + device.getDeviceID(),
+            () -> {
+                Pigeon2Configuration current = new Pigeon2Configuration();
+                return configurator.refresh(current, TIMEOUT_SECONDS).isOK() && matches(current, config);
+            },
+            () -> configurator.apply(config, TIMEOUT_SECONDS),
+            afterApply
+        );
+    }
+
+    private static boolean matches(TalonFXConfiguration current, TalonFXConfiguration config) {
+        return current.MotorOutput.Inverted == config.MotorOutput.Inverted
+            && current.MotorOutput.NeutralMode == config.MotorOutput.NeutralMode
+            && current.Feedback.FeedbackSensorSource == config.Feedback.FeedbackSensorSource
+            && current.Feedback.FeedbackRemoteSensorID == config.Feedback.FeedbackRemoteSensorID
+            && near(current.Feedback.SensorToMechanismRatio, config.Feedback.SensorToMechanismRatio)
+            && near(current.Feedback.RotorToSensorRatio, config.Feedback.RotorToSensorRatio)
+            && current.ClosedLoopGeneral.ContinuousWrap == config.ClosedLoopGeneral.ContinuousWrap
+            && current.CurrentLimits.SupplyCurrentLimitEnable == config.CurrentLimits.SupplyCurrentLimitEnable
+            && near(current.CurrentLimits.SupplyCurrentLimit, config.CurrentLimits.SupplyCurrentLimit)
+            && near(current.CurrentLimits.SupplyCurrentLowerLimit, config.CurrentLimits.SupplyCurrentLowerLimit)
+            && near(current.CurrentLimits.SupplyCurrentLowerTime, config.CurrentLimits.SupplyCurrentLowerTime)
+            && current.CurrentLimits.StatorCurrentLimitEnable == config.CurrentLimits.StatorCurrentLimitEnable
+            && near(current.CurrentLimits.StatorCurrentLimit, config.CurrentLimits.StatorCurrentLimit)
+            && near(current.TorqueCurrent.PeakForwardTorqueCurrent, config.TorqueCurrent.PeakForwardTorqueCurrent)
+            && near(current.TorqueCurrent.PeakReverseTorqueCurrent, config.TorqueCurrent.PeakReverseTorqueCurrent)
+            && near(current.Slot0.kP, config.Slot0.kP)
+            && near(current.Slot0.kI, config.Slot0.kI)
+            && near(current.Slot0.kD, config.Slot0.kD)
+            && near(current.Slot0.kS, config.Slot0.kS)
+            && near(current.Slot0.kV, config.Slot0.kV)
+            && near(current.Slot0.kA, config.Slot0.kA)
+            && near(current.Slot1.kP, config.Slot1.kP)
+            && near(current.Slot1.kI, config.Slot1.kI)
+            && near(current.Slot1.kD, config.Slot1.kD)
+            && near(current.Slot1.kS, config.Slot1.kS)
+            && near(current.Slot1.kV, config.Slot1.kV)
+            && near(current.Slot1.kA, config.Slot1.kA)
+            && near(current.OpenLoopRamps.DutyCycleOpenLoopRampPeriod, config.OpenLoopRamps.DutyCycleOpenLoopRampPeriod)
+            && near(current.OpenLoopRamps.VoltageOpenLoopRampPeriod, config.OpenLoopRamps.VoltageOpenLoopRampPeriod)
+            && near(current.ClosedLoopRamps.DutyCycleClosedLoopRampPeriod, config.ClosedLoopRamps.DutyCycleClosedLoopRampPeriod)
+            && near(current.ClosedLoopRamps.VoltageClosedLoopRampPeriod, config.ClosedLoopRamps.VoltageClosedLoopRampPeriod);
+    }
+
+    private static boolean matches(CANcoderConfiguration current, CANcoderConfiguration config) {
+        return current.MagnetSensor.SensorDirection == config.MagnetSensor.SensorDirection
+            && near(current.MagnetSensor.MagnetOffset, config.MagnetSensor.MagnetOffset)
+            && near(current.MagnetSensor.AbsoluteSensorDiscontinuityPoint, config.MagnetSensor.AbsoluteSensorDiscontinuityPoint);
+    }
+
+    private static boolean matches(Pigeon2Configuration current, Pigeon2Configuration config) {
+        return near(current.MountPose.MountPoseYaw, config.MountPose.MountPoseYaw)
+            && near(current.MountPose.MountPosePitch, config.MountPose.MountPosePitch)
+            && near(current.MountPose.MountPoseRoll, config.MountPose.MountPoseRoll);
+    }
+
+    private static boolean near(double current, double wanted) {
+        return Math.abs(current - wanted) <= READ_BACK_TOLERANCE * Math.max(1.0, Math.abs(wanted));
+    }
+
+    /**
+     * Runs an action from the next awaitAll(), after every config submitted before it is done. Actions run
+     * in the order they were added, whether or not the configs succeeded.
+     */
+    public static synchronized void afterAll(Runnable action) {
+        afterAllActions.add(action);
+    }
+
+    private static synchronized void submit(String device, BooleanSupplier alreadyConfigured, Supplier<StatusCode> apply, Runnable afterApply) {
+        if (pending.isEmpty()) {
+            firstSubmitNanos = System.nanoTime();
+        }
+        pending.add(executor.submit(() -> {
+            long start = System.nanoTime();
+
+            if (alreadyConfigured.getAsBoolean()) {
+                if (afterApply != null) {
+                    afterApply.run();
+                }
+                return new Result(device, true, true, 0, StatusCode.OK, (System.nanoTime() - start) / 1e6);
+            }
+
+            StatusCode status = StatusCode.OK;
+            int attempts = 0;
+            while (attempts < MAX_ATTEMPTS) {
+                attempts++;
+                status = apply.get();
+                if (status.isOK()) {
+                    break;
+                }
+            }
+
+            if (status.isOK() && afterApply != null) {
+                afterApply.run();
+            }
+            return new Result(device, status.isOK(), false, attempts, status, (System.nanoTime() - start) / 1e6);
+        }));
+    }
+
+    /**
+     * Waits for every submitted config to finish, then logs a report of each device and runs
+     * the afterAll() actions
+     * @return If every device was configured
+     */
+    public static synchronized boolean awaitAll() {
+        if (pending.isEmpty()) {
+            runAfterAllActions();
+            return true;
+        }
+        boolean allOk = true;
+
+        for (Future<Result> future : pending) {
+            Result result;
+            try {
+                result = future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                DriverStation.reportError("Device configuration failed: " + e.getMessage(), e.getStackTrace());
+                allOk = false;
+                continue;
+            }
+
+            String outcome = result.skipped() ? "already configured" : result.ok() ? "applied" : "FAILED (" + result.status().getName() + ")";
+            Logger.recordOutput("DeviceConfig/" + result.device() + "/Result", outcome);
+            Logger.recordOutput("DeviceConfig/" + result.device() + "/Attempts", result.attempts());
+            Logger.recordOutput("DeviceConfig/" + result.device() + "/Ms", result.millis());
+
+            if (!result.ok()) {
+                DriverStation.reportError(result.device() + " failed to configure: " + result.status().getName(), false);
+                allOk = false;
+            } else if (result.attempts() > 1) {
+                /* Usually a busy or flaky bus */
+                DriverStation.reportWarning(result.device() + " took " + result.attempts() + " attempts to configure", false);
+            }
+        }
+        pending.clear();
+
+        double totalMs = (System.nanoTime() - firstSubmitNanos) / 1e6;
+        Logger.recordOutput("DeviceConfig/TotalMs", totalMs);
+
+        runAfterAllActions();
+        return allOk;
+    }
+
+    private static void runAfterAllActions() {
+        for (Runnable action : afterAllActions) {
+            action.run();
+        }
+        afterAllActions.clear();
+    }
+}
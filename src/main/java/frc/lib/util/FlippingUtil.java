@@ -1,5 +1,6 @@
 package frc.lib.util;
 
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
@@ -28,4 +29,25 @@ public class FlippingUtil {
     return new Pose2d(
         flipFieldPosition(pose.getTranslation()), flipFieldRotation(pose.getRotation()));
   }
-}
\ No newline at end of file
+
+  /**
+   * Flip a field x coordinate to the other side of the field, for hot paths that can't allocate
+   */
+  public static double flipFieldX(double x) {
+    return FieldLayout.FIELD_LENGTH - x;
+  }
+
+  /**
+   * Flip a field y coordinate to the other side of the field, for hot paths that can't allocate
+   */
+  public static double flipFieldY(double y) {
+    return FieldLayout.FIELD_WIDTH - y;
+  }
+
+  /**
+   * Flip a field heading to the other side of the field, wrapped to (-pi, pi]
+   */
+  public static double flipFieldHeading(double headingRadians) {
+    return MathUtil.angleModulus(headingRadians - Math.PI);
+  }
+}
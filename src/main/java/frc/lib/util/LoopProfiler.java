@@ -0,0 +1,208 @@
+package frc.lib.util;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.littletonrobotics.junction.Logger;
+
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj2.command.Command;
+
+/*
+ * Times each stage of the robot loop into fixed bucket histograms and logs p50/p99/max for every
+ * stage once a second. When a loop overruns, the slowest stage of that loop and the GC activity
+ * during it get logged so the overrun can be pinned on something.
+ *
+ * Only meant to be used from the main robot thread.
+ */
+public final class LoopProfiler {
+    private static final String KEY = "LoopProfiler/";
+
+    /* 0.05ms buckets up to 50ms, anything slower goes in the last bucket */
+    private static final double BUCKET_WIDTH_MS = 0.05;
+    private static final int BUCKET_COUNT = 1000;
+
+    private static final long PUBLISH_PERIOD_NS = 1_000_000_000L;
+    /* A bit of slack over the loop period so normal scheduling jitter doesn't count */
+    private static final double OVERRUN_THRESHOLD_MS = TimedRobot.kDefaultPeriod * 1000.0 * 1.1;
+
+    private static final List<Stage> stages = new ArrayList<>();
+    /* By name so recreated commands (new auto every match) don't keep adding stages */
+    private static final Map<String, Stage> commandStages = new HashMap<>();
+    private static final List<GarbageCollectorMXBean> gcBeans = ManagementFactory.getGarbageCollectorMXBeans();
+
+    private static final Stage cycleStage = stage("Cycle");
+
+    /* Innermost running stage */
+    private static Stage current = null;
+    /* Last time any stage started or stopped, command execute times are measured from this */
+    private static long lastMarkNanos = 0;
+
+    private static long cycleStartNanos = 0;
+    private static long lastPublishNanos = 0;
+    private static long cycleStartGcCount = 0;
+    private static long cycleStartGcTimeMs = 0;
+    private static Stage slowestStage = null;
+    private static double slowestStageMs = 0.0;
+    private static long overrunCount = 0;
+
+    private LoopProfiler() {}
+
+    public static final class Stage {
+        private final String name;
+        private final String p50Key;
+        private final String p99Key;
+        private final String maxKey;
+
+        private final int[] buckets = new int[BUCKET_COUNT];
+        private int count = 0;
+        private double maxMs = 0.0;
+
+        private long startNanos = 0;
+        private Stage parent = null;
+        private boolean hadChild = false;
+
+        private Stage(String name) {
+            this.name = name;
+            this.p50Key = KEY + name + "/P50Ms";
+            this.p99Key = KEY + name + "/P99Ms";
+            this.maxKey = KEY + name + "/MaxMs";
+        }
+
+        public void start() {
+            parent = current;
+            if (parent != null) {
+                parent.hadChild = true;
+            }
+            current = this;
+            hadChild = false;
+            startNanos = System.nanoTime();
+            lastMarkNanos = startNanos;
+        }
+
+        public void stop() {
+            long now = System.nanoTime();
+            current = parent;
+            lastMarkNanos = now;
+            record((now - startNanos) / 1e6, !hadChild);
+        }
+
+        private void record(double ms, boolean isLeaf) {
+            buckets[Math.min((int) (ms / BUCKET_WIDTH_MS), BUCKET_COUNT - 1)]++;
+            count++;
+            maxMs = Math.max(maxMs, ms);
+
+            /* Only innermost stages, otherwise the slowest is always whatever wraps everything */
+            if (isLeaf && ms > slowestStageMs) {
+                slowestStage = this;
+                slowestStageMs = ms;
+            }
+        }
+
+        private double percentileMs(double percentile) {
+            int target = (int) Math.ceil(percentile * count);
+            int seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += buckets[i];
+                if (seen >= target) {
+                    return (i + 1) * BUCKET_WIDTH_MS;
+                }
+            }
+            return maxMs;
+        }
+
+        private void publishAndReset() {
+            if (count == 0) {
+                return;
+            }
+            Logger.recordOutput(p50Key, percentileMs(0.5));
+            Logger.recordOutput(p99Key, percentileMs(0.99));
+            Logger.recordOutput(maxKey, maxMs);
+
+            Arrays.fill(buckets, 0);
+            count = 0;
+            maxMs = 0.0;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * Makes a new stage, do this once and keep the Stage around
+     */
+    public static Stage stage(String name) {
+        Stage stage = new Stage(name);
+        stages.add(stage);
+        return stage;
+    }
+
+    /**
+     * Call at the very start of every robot loop. The time between two calls is the full loop,
+     * including everything outside user code (logging, GC pauses, waiting).
+     */
+    public static void startCycle() {
+        long now = System.nanoTime();
+        long gcCount = 0;
+        long gcTimeMs = 0;
+        for (GarbageCollectorMXBean bean : gcBeans) {
+            gcCount += Math.max(0, bean.getCollectionCount());
+            gcTimeMs += Math.max(0, bean.getCollectionTime());
+        }
+
+        if (cycleStartNanos != 0) {
+            double cycleMs = (now - cycleStartNanos) / 1e6;
+            cycleStage.record(cycleMs, false);
+
+            if (cycleMs > OVERRUN_THRESHOLD_MS) {
+                overrunCount++;
+                Logger.recordOutput(KEY + "Overrun/Count", overrunCount);
+                Logger.recordOutput(KEY + "Overrun/CycleMs", cycleMs);
+                Logger.recordOutput(KEY + "Overrun/SlowestStage", slowestStage == null ? "" : slowestStage.name);
+                Logger.recordOutput(KEY + "Overrun/SlowestStageMs", slowestStageMs);
+                Logger.recordOutput(KEY + "Overrun/GcCount", gcCount - cycleStartGcCount);
+                Logger.recordOutput(KEY + "Overrun/GcTimeMs", gcTimeMs - cycleStartGcTimeMs);
+            }
+        }
+
+        if (now - lastPublishNanos >= PUBLISH_PERIOD_NS) {
+            for (Stage stage : stages) {
+                stage.publishAndReset();
+            }
+            lastPublishNanos = now;
+        }
+
+        cycleStartNanos = now;
+        cycleStartGcCount = gcCount;
+        cycleStartGcTimeMs = gcTimeMs;
+        slowestStage = null;
+        slowestStageMs = 0.0;
+        current = null;
+        lastMarkNanos = now;
+    }
+
+    /**
+     * Pass to CommandScheduler.onCommandExecute(). The scheduler only calls back after execute(),
+     * so this measures from the last stage mark, which is close to the command's execute time
+     * (the first command of a loop also picks up button polling).
+     */
+    public static void recordCommandExecute(Command command) {
+        long now = System.nanoTime();
+        Stage stage = commandStages.get(command.getName());
+        if (stage == null) {
+            stage = stage("Commands/" + command.getName());
+            commandStages.put(command.getName(), stage);
+        }
+        if (current != null) {
+            current.hadChild = true;
+        }
+        stage.record((now - lastMarkNanos) / 1e6, true);
+        lastMarkNanos = now;
+    }
+}
@@ -0,0 +1,158 @@
+package frc.lib.util;
+
+import edu.wpi.first.math.MathUtil;
+
+/*
+ * Fixed size history of robot poses for "where was the robot at time t" lookups.
+ *
+ * Same idea as WPILib's TimeInterpolatableBuffer<Pose2d>, but stored in parallel double arrays used
+ * as a ring, so adding a pose or looking one up never allocates. Lookups are a binary search over
+ * the ring and interpolate between the two poses either side of the timestamp. Once the ring is
+ * full, adding a pose drops the oldest one.
+ *
+ * Not thread safe, use it from the main loop.
+ */
+public class PoseHistory {
+    private final double[] timestamps;
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] headings;
+
+    /* Physical index of the oldest pose, and how many are stored */
+    private int start = 0;
+    private int size = 0;
+
+    /**
+     * @param capacity Most poses kept, e.g. history length in seconds times the odometry frequency
+     */
+    public PoseHistory(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("PoseHistory needs room for at least 2 poses");
+        }
+        timestamps = new double[capacity];
+        xs = new double[capacity];
+        ys = new double[capacity];
+        headings = new double[capacity];
+    }
+
+    /**
+     * Adds a pose. Poses have to come in timestamp order, one older than the newest is ignored and
+     * one at the same time replaces it.
+     * @param timestampSeconds
+     * @param x Meters
+     * @param y Meters
+     * @param headingRadians
+     */
+    public void add(double timestampSeconds, double x, double y, double headingRadians) {
+        int index;
+        if (size > 0) {
+            int newest = physical(size - 1);
+            if (timestampSeconds < timestamps[newest]) {
+                return;
+            }
+            if (timestampSeconds == timestamps[newest]) {
+                index = newest;
+            } else {
+                index = nextSlot();
+            }
+        } else {
+            index = nextSlot();
+        }
+
+        timestamps[index] = timestampSeconds;
+        xs[index] = x;
+        ys[index] = y;
+        headings[index] = headingRadians;
+    }
+
+    /* Makes room for one more pose, dropping the oldest if full */
+    private int nextSlot() {
+        if (size < timestamps.length) {
+            size++;
+        } else {
+            start = (start + 1) % timestamps.length;
+        }
+        return physical(size - 1);
+    }
+
+    /**
+     * Gets the pose at a time, interpolating between the poses on either side. Times before the
+     * oldest or after the newest pose get that pose.
+     * @param out Filled with x, y and heading (meters, radians)
+     * @return False (and out untouched) if the history is empty
+     */
+    public boolean sample(double timestampSeconds, double[] out) {
+        if (size == 0) {
+            return false;
+        }
+
+        int oldest = physical(0);
+        int newest = physical(size - 1);
+        if (timestampSeconds <= timestamps[oldest]) {
+            copy(oldest, out);
+            return true;
+        }
+        if (timestampSeconds >= timestamps[newest]) {
+            copy(newest, out);
+            return true;
+        }
+
+        /* First logical index with a timestamp after the one asked for, there's always one before it */
+        int low = 1;
+        int high = size - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[physical(mid)] > timestampSeconds) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+
+        int after = physical(low);
+        int before = physical(low - 1);
+        double t = (timestampSeconds - timestamps[before]) / (timestamps[after] - timestamps[before]);
+        out[0] = xs[before] + (xs[after] - xs[before]) * t;
+        out[1] = ys[before] + (ys[after] - ys[before]) * t;
+        out[2] = MathUtil.angleModulus(headings[before] + MathUtil.angleModulus(headings[after] - headings[before]) * t);
+        return true;
+    }
+
+    private void copy(int index, double[] out) {
+        out[0] = xs[index];
+        out[1] = ys[index];
+        out[2] = headings[index];
+    }
+
+    private int physical(int logicalIndex) {
+        int index = start + logicalIndex;
+        return index < timestamps.length ? index : index - timestamps.length;
+    }
+
+    public void clear() {
+        start = 0;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return timestamps.length;
+    }
+
+    /**
+     * @return Timestamp of the oldest pose, NaN if empty
+     */
+    public double getOldestTimestamp() {
+        return size > 0 ? timestamps[physical(0)] : Double.NaN;
+    }
+
+    /**
+     * @return Timestamp of the newest pose, NaN if empty
+     */
+    public double getNewestTimestamp() {
+        return size > 0 ? timestamps[physical(size - 1)] : Double.NaN;
+    }
+}
@@ -0,0 +1,52 @@
+package frc.lib.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.CANBus;
+
+/*
+ * Every status signal the IO layers read in the main loop, so they're all refreshed together once per
+ * loop instead of each device doing its own refresh. Devices add their signals with register() when
+ * they're built, Swerve calls refreshAll() right before the IOs' updateInputs(), and updateInputs()
+ * only reads the cached values.
+ *
+ * Signals are kept per bus so each batched refresh only covers one bus. With the whole drivetrain on
+ * one bus it's a single refresh.
+ */
+public final class SignalRegistry {
+    private static final List<String> busNames = new ArrayList<>();
+    private static BaseStatusSignal[][] signalsByBus = new BaseStatusSignal[0][];
+
+    private SignalRegistry() {}
+
+    /**
+     * Adds signals to the per loop refresh
+     * @param bus Bus the signals' device is on
+     */
+    public static synchronized void register(CANBus bus, BaseStatusSignal... signals) {
+        int index = busNames.indexOf(bus.getName());
+        if (index < 0) {
+            busNames.add(bus.getName());
+            BaseStatusSignal[][] newSignalsByBus = new BaseStatusSignal[signalsByBus.length + 1][];
+            System.arraycopy(signalsByBus, 0, newSignalsByBus, 0, signalsByBus.length);
+            newSignalsByBus[signalsByBus.length] = new BaseStatusSignal[0];
+            signalsByBus = newSignalsByBus;
+            index = signalsByBus.length - 1;
+        }
+
+        BaseStatusSignal[] busSignals = signalsByBus[index];
+        BaseStatusSignal[] newBusSignals = new BaseStatusSignal[busSignals.length + signals.length];
+        System.arraycopy(busSignals, 0, newBusSignals, 0, busSignals.length);
+        System.arraycopy(signals, 0, newBusSignals, busSignals.length, signals.length);
+        signalsByBus[index] = newBusSignals;
+    }
+
+    /** Refreshes every registered signal, call once per loop before reading any of them */
+    public static synchronized void refreshAll() {
+        for (BaseStatusSignal[] busSignals : signalsByBus) {
+            BaseStatusSignal.refreshAll(busSignals);
+        }
+    }
+}
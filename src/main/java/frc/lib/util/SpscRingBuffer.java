@@ -0,0 +1,70 @@
+package frc.lib.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Bounded, lock free queue for handing objects from exactly one producer thread to exactly one
+ * consumer thread. offer() never blocks, it returns false when the buffer is full so the producer
+ * can count the drop and move on.
+ */
+public class SpscRingBuffer<T> {
+    private final Object[] buffer;
+    private final int mask;
+
+    /* Next slot to read, only written by the consumer */
+    private final AtomicLong head = new AtomicLong();
+    /* Next slot to write, only written by the producer */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity Max number of queued elements, must be a power of two
+     */
+    public SpscRingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two, got " + capacity);
+        }
+        buffer = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Producer side
+     * @return False if the buffer was full and the value was not added
+     */
+    public boolean offer(T value) {
+        long t = tail.get();
+        if (t - head.get() >= buffer.length) {
+            return false;
+        }
+        buffer[(int) (t & mask)] = value;
+        /* Publishes the write above to the consumer */
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Consumer side
+     * @return The oldest element, or null if empty
+     */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long h = head.get();
+        if (h >= tail.get()) {
+            return null;
+        }
+        int index = (int) (h & mask);
+        T value = (T) buffer[index];
+        buffer[index] = null;
+        head.lazySet(h + 1);
+        return value;
+    }
+
+    public int size() {
+        /* Can briefly read low while the other side is mid update, never negative */
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+}
@@ -0,0 +1,331 @@
+package frc.lib.util;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+
+/*
+ * Extended Kalman filter on (x, y, heading), as an alternative to SwerveDrivePoseEstimator.
+ *
+ * Predict: each odometry sample moves the state by the module deltas (least squares over the modules)
+ * and the gyro delta, and grows the covariance with how far the robot moved.
+ *
+ * Vision: measurements are from the past, so instead of rewinding and replaying odometry like WPILib
+ * does, the measurement is applied to the past state and the correction carried forward in closed form.
+ * For pose composition the Jacobian from the past state to now is just
+ *   [[1, 0, -(y_now - y_then)], [0, 1, x_now - x_then], [0, 0, 1]]
+ * and the process noise added in between is the difference of a running sum, so one measurement costs a
+ * binary search and some 3x3 math however old it is. The past state is the current estimate moved back by
+ * the raw odometry between then and now, so it always includes every correction made since.
+ *
+ * Allocation free apart from the returned Pose2d. Not thread safe, use it from the main loop.
+ */
+public class SwerveEKFPoseEstimator implements SwervePoseEstimator {
+    /* Variance added per second regardless of motion (wheel slip while pushing, gyro drift) */
+    private static final double XY_VARIANCE_PER_SECOND = 1e-4;
+    private static final double HEADING_VARIANCE_PER_SECOND = 1e-6;
+    /* Covariance of a reset pose */
+    private static final double INITIAL_XY_VARIANCE = 0.01;
+    private static final double INITIAL_HEADING_VARIANCE = 1e-4;
+    /* Past state variances are clamped to this, the backed out covariance can go slightly negative */
+    private static final double MIN_VARIANCE = 1e-6;
+
+    private final double[] moduleX;
+    private final double[] moduleY;
+    private final double meanModuleX;
+    private final double meanModuleY;
+
+    private final double xyVariancePerMeter;
+    private final double headingVariancePerRadian;
+
+    /* Estimate and its covariance (row major 3x3) */
+    private double x;
+    private double y;
+    private double heading;
+    private final double[] covariance = new double[9];
+    private Pose2d estimatedPose;
+
+    /* Raw odometry (module deltas plus gyro, never corrected) and the process noise added so far */
+    private double odometryX;
+    private double odometryY;
+    private double odometryHeading;
+    private double totalXYVariance;
+    private double totalHeadingVariance;
+    private final PoseHistory odometryHistory;
+    /* x is totalXYVariance and y is totalHeadingVariance at each sample, heading is unused */
+    private final PoseHistory noiseHistory;
+
+    private final double[] lastDistances;
+    private double lastGyro;
+    private double lastTimestamp = Double.NaN;
+
+    /* Scratch */
+    private final double[] sample = new double[3];
+    private final double[] transition = new double[9];
+    private final double[] pastCovariance = new double[9];
+    private final double[] crossCovariance = new double[9];
+    private final double[] innovationCovariance = new double[9];
+    private final double[] innovationCovarianceInverse = new double[9];
+    private final double[] gain = new double[9];
+    private final double[] temp = new double[9];
+
+    /**
+     * @param moduleLocations Module positions relative to the robot center
+     * @param historySize Odometry samples kept, vision older than this is ignored
+     * @param xyVariancePerMeter How much x and y variance (m^2) odometry picks up per meter driven
+     * @param headingVariancePerRadian How much heading variance (rad^2) the gyro picks up per radian turned
+     */
+    public SwerveEKFPoseEstimator(
+        Translation2d[] moduleLocations,
+        int historySize,
+        double xyVariancePerMeter,
+        double headingVariancePerRadian,
+        Rotation2d gyroAngle,
+        SwerveModulePosition[] modulePositions,
+        Pose2d initialPose
+    ) {
+        moduleX = new double[moduleLocations.length];
+        moduleY = new double[moduleLocations.length];
+        double sumX = 0.0;
+        double sumY = 0.0;
+        for (int i = 0; i < moduleLocations.length; i++) {
+            moduleX[i] = moduleLocations[i].getX();
+            moduleY[i] = moduleLocations[i].getY();
+            sumX += moduleX[i];
+            sumY += moduleY[i];
+        }
+        meanModuleX = sumX / moduleLocations.length;
+        meanModuleY = sumY / moduleLocations.length;
+
+        this.xyVariancePerMeter = xyVariancePerMeter;
+        this.headingVariancePerRadian = headingVariancePerRadian;
+
+        odometryHistory = new PoseHistory(historySize);
+        noiseHistory = new PoseHistory(historySize);
+        lastDistances = new double[moduleLocations.length];
+
+        resetPosition(gyroAngle, modulePositions, initialPose);
+    }
+
+    @Override
+    public void resetPosition(Rotation2d gyroAngle, SwerveModulePosition[] modulePositions, Pose2d pose) {
+        x = pose.getX();
+        y = pose.getY();
+        heading = pose.getRotation().getRadians();
+        estimatedPose = pose;
+
+        for (int i = 0; i < 9; i++) {
+            covariance[i] = 0.0;
+        }
+        covariance[0] = INITIAL_XY_VARIANCE;
+        covariance[4] = INITIAL_XY_VARIANCE;
+        covariance[8] = INITIAL_HEADING_VARIANCE;
+
+        odometryX = 0.0;
+        odometryY = 0.0;
+        odometryHeading = gyroAngle.getRadians();
+        totalXYVariance = 0.0;
+        totalHeadingVariance = 0.0;
+        odometryHistory.clear();
+        noiseHistory.clear();
+
+        for (int i = 0; i < lastDistances.length; i++) {
+            lastDistances[i] = modulePositions[i].distanceMeters;
+        }
+        lastGyro = gyroAngle.getRadians();
+        lastTimestamp = Double.NaN;
+    }
+
+    @Override
+    public Pose2d updateWithTime(double timestampSeconds, Rotation2d gyroAngle, SwerveModulePosition[] modulePositions) {
+        double gyro = gyroAngle.getRadians();
+        double dTheta = MathUtil.angleModulus(gyro - lastGyro);
+        double dt = Double.isNaN(lastTimestamp) ? 0.0 : Math.max(0.0, timestampSeconds - lastTimestamp);
+
+        /* Robot relative translation, least squares over the modules with the gyro's rotation taken out */
+        double sumDx = 0.0;
+        double sumDy = 0.0;
+        for (int i = 0; i < lastDistances.length; i++) {
+            double delta = modulePositions[i].distanceMeters - lastDistances[i];
+            sumDx += delta * modulePositions[i].angle.getCos();
+            sumDy += delta * modulePositions[i].angle.getSin();
+            lastDistances[i] = modulePositions[i].distanceMeters;
+        }
+        double dx = sumDx / lastDistances.length + dTheta * meanModuleY;
+        double dy = sumDy / lastDistances.length - dTheta * meanModuleX;
+
+        /* Twist to a pose delta, same as Pose2d.exp() */
+        double s;
+        double c;
+        if (Math.abs(dTheta) < 1e-9) {
+            s = 1.0 - dTheta * dTheta / 6.0;
+            c = dTheta / 2.0;
+        } else {
+            s = Math.sin(dTheta) / dTheta;
+            c = (1.0 - Math.cos(dTheta)) / dTheta;
+        }
+        double localX = dx * s - dy * c;
+        double localY = dx * c + dy * s;
+
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+        double fieldDx = localX * cos - localY * sin;
+        double fieldDy = localX * sin + localY * cos;
+        x += fieldDx;
+        y += fieldDy;
+        heading = MathUtil.angleModulus(heading + dTheta);
+
+        double odometryCos = Math.cos(odometryHeading);
+        double odometrySin = Math.sin(odometryHeading);
+        odometryX += localX * odometryCos - localY * odometrySin;
+        odometryY += localX * odometrySin + localY * odometryCos;
+        odometryHeading = gyro;
+
+        /* P = F P F^T + Q */
+        double xyVariance = xyVariancePerMeter * Math.hypot(dx, dy) + XY_VARIANCE_PER_SECOND * dt;
+        double headingVariance = headingVariancePerRadian * Math.abs(dTheta) + HEADING_VARIANCE_PER_SECOND * dt;
+        setTransition(fieldDx, fieldDy);
+        multiply(transition, covariance, temp);
+        multiplyTransposed(temp, transition, covariance);
+        covariance[0] += xyVariance;
+        covariance[4] += xyVariance;
+        covariance[8] += headingVariance;
+
+        totalXYVariance += xyVariance;
+        totalHeadingVariance += headingVariance;
+        odometryHistory.add(timestampSeconds, odometryX, odometryY, odometryHeading);
+        noiseHistory.add(timestampSeconds, totalXYVariance, totalHeadingVariance, 0.0);
+
+        lastGyro = gyro;
+        lastTimestamp = timestampSeconds;
+        estimatedPose = new Pose2d(x, y, new Rotation2d(heading));
+        return estimatedPose;
+    }
+
+    @Override
+    public void addVisionMeasurement(Pose2d visionPose, double timestampSeconds, double xyStdDev, double headingStdDev) {
+        if (odometryHistory.size() == 0 || timestampSeconds < odometryHistory.getOldestTimestamp()) {
+            return;
+        }
+
+        /* The estimate at the measurement time, now moved back by the raw odometry since */
+        odometryHistory.sample(timestampSeconds, sample);
+        double relativeX = sample[0] - odometryX;
+        double relativeY = sample[1] - odometryY;
+        double odometryCos = Math.cos(odometryHeading);
+        double odometrySin = Math.sin(odometryHeading);
+        double localX = relativeX * odometryCos + relativeY * odometrySin;
+        double localY = -relativeX * odometrySin + relativeY * odometryCos;
+        double localHeading = MathUtil.angleModulus(sample[2] - odometryHeading);
+
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+        double pastX = x + localX * cos - localY * sin;
+        double pastY = y + localX * sin + localY * cos;
+        double pastHeading = heading + localHeading;
+
+        /* Covariance then: P_then = F^-1 (P_now - Q) F^-T, F^-1 is F with the translation negated */
+        noiseHistory.sample(timestampSeconds, sample);
+        System.arraycopy(covariance, 0, temp, 0, 9);
+        temp[0] -= totalXYVariance - sample[0];
+        temp[4] -= totalXYVariance - sample[0];
+        temp[8] -= totalHeadingVariance - sample[1];
+        setTransition(pastX - x, pastY - y);
+        multiply(transition, temp, crossCovariance);
+        multiplyTransposed(crossCovariance, transition, pastCovariance);
+        pastCovariance[0] = Math.max(pastCovariance[0], MIN_VARIANCE);
+        pastCovariance[4] = Math.max(pastCovariance[4], MIN_VARIANCE);
+        pastCovariance[8] = Math.max(pastCovariance[8], MIN_VARIANCE);
+
+        /* S = P_then + R, and the cross covariance between now and then is F P_then */
+        System.arraycopy(pastCovariance, 0, innovationCovariance, 0, 9);
+        innovationCovariance[0] += xyStdDev * xyStdDev;
+        innovationCovariance[4] += xyStdDev * xyStdDev;
+        innovationCovariance[8] += headingStdDev * headingStdDev;
+        if (!invert(innovationCovariance, innovationCovarianceInverse)) {
+            return;
+        }
+        setTransition(x - pastX, y - pastY);
+        multiply(transition, pastCovariance, crossCovariance);
+
+        /* K = F P_then S^-1, x += K (z - x_then), P -= K (F P_then)^T */
+        multiply(crossCovariance, innovationCovarianceInverse, gain);
+        double innovationX = visionPose.getX() - pastX;
+        double innovationY = visionPose.getY() - pastY;
+        double innovationHeading = MathUtil.angleModulus(visionPose.getRotation().getRadians() - pastHeading);
+        x += gain[0] * innovationX + gain[1] * innovationY + gain[2] * innovationHeading;
+        y += gain[3] * innovationX + gain[4] * innovationY + gain[5] * innovationHeading;
+        heading = MathUtil.angleModulus(heading + gain[6] * innovationX + gain[7] * innovationY + gain[8] * innovationHeading);
+
+        multiplyTransposed(gain, crossCovariance, temp);
+        for (int row = 0; row < 3; row++) {
+            for (int col = row; col < 3; col++) {
+                double value = covariance[row * 3 + col] - 0.5 * (temp[row * 3 + col] + temp[col * 3 + row]);
+                covariance[row * 3 + col] = value;
+                covariance[col * 3 + row] = value;
+            }
+        }
+
+        estimatedPose = new Pose2d(x, y, new Rotation2d(heading));
+    }
+
+    @Override
+    public Pose2d getEstimatedPosition() {
+        return estimatedPose;
+    }
+
+    /* Jacobian of moving a pose by a field relative translation, [[1, 0, -dy], [0, 1, dx], [0, 0, 1]] */
+    private void setTransition(double fieldDx, double fieldDy) {
+        transition[0] = 1.0;
+        transition[1] = 0.0;
+        transition[2] = -fieldDy;
+        transition[3] = 0.0;
+        transition[4] = 1.0;
+        transition[5] = fieldDx;
+        transition[6] = 0.0;
+        transition[7] = 0.0;
+        transition[8] = 1.0;
+    }
+
+    /* out = a b, out can't be a or b */
+    private static void multiply(double[] a, double[] b, double[] out) {
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 3; col++) {
+                out[row * 3 + col] = a[row * 3] * b[col] + a[row * 3 + 1] * b[3 + col] + a[row * 3 + 2] * b[6 + col];
+            }
+        }
+    }
+
+    /* out = a b^T, out can't be a or b */
+    private static void multiplyTransposed(double[] a, double[] b, double[] out) {
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 3; col++) {
+                out[row * 3 + col] = a[row * 3] * b[col * 3] + a[row * 3 + 1] * b[col * 3 + 1] + a[row * 3 + 2] * b[col * 3 + 2];
+            }
+        }
+    }
+
+    /* 3x3 inverse by cofactors, false if singular */
+    private static boolean invert(double[] m, double[] out) {
+        double c00 = m[4] * m[8] - m[5] * m[7];
+        double c01 = m[5] * m[6] - m[3] * m[8];
+        double c02 = m[3] * m[7] - m[4] * m[6];
+        double determinant = m[0] * c00 + m[1] * c01 + m[2] * c02;
+        if (Math.abs(determinant) < 1e-12) {
+            return false;
+        }
+        double inverseDeterminant = 1.0 / determinant;
+        out[0] = c00 * inverseDeterminant;
+        out[1] = (m[2] * m[7] - m[1] * m[8]) * inverseDeterminant;
+        out[2] = (m[1] * m[5] - m[2] * m[4]) * inverseDeterminant;
+        out[3] = c01 * inverseDeterminant;
+        out[4] = (m[0] * m[8] - m[2] * m[6]) * inverseDeterminant;
+        out[5] = (m[2] * m[3] - m[0] * m[5]) * inverseDeterminant;
+        out[6] = c02 * inverseDeterminant;
+        out[7] = (m[1] * m[6] - m[0] * m[7]) * inverseDeterminant;
+        out[8] = (m[0] * m[4] - m[1] * m[3]) * inverseDeterminant;
+        return true;
+    }
+}
@@ -1,5 +1,7 @@
 package frc.lib.util;
 
+import com.ctre.phoenix6.CANBus;
+
 import edu.wpi.first.math.geometry.Rotation2d;
 
 public class SwerveModuleConstants {
@@ -8,17 +10,59 @@ public class SwerveModuleConstants {
     public final int cancoderID;
     public final Rotation2d angleOffset;
 
+    public final CANBus driveMotorBus;
+    public final CANBus angleMotorBus;
+    public final CANBus cancoderBus;
+
+    /**
+     * Swerve Module Constants to be used when creating swerve modules, with every device on the same bus.
+     * @param driveMotorID
+     * @param angleMotorID
+     * @param canCoderID
+     * @param angleOffset
+     * @param canBus
+     */
+    public SwerveModuleConstants(int driveMotorID, int angleMotorID, int canCoderID, Rotation2d angleOffset, CANBus canBus) {
+        this(driveMotorID, angleMotorID, canCoderID, angleOffset, canBus, canBus, canBus);
+    }
+
     /**
-     * Swerve Module Constants to be used when creating swerve modules.
+     * Swerve Module Constants to be used when creating swerve modules, for modules with devices split across buses.
      * @param driveMotorID
      * @param angleMotorID
      * @param canCoderID
      * @param angleOffset
+     * @param driveMotorBus
+     * @param angleMotorBus
+     * @param cancoderBus
      */
-    public SwerveModuleConstants(int driveMotorID, int angleMotorID, int canCoderID, Rotation2d angleOffset) {
+    public SwerveModuleConstants(int driveMotorID, int angleMotorID, int canCoderID, Rotation2d angleOffset,
+            CANBus driveMotorBus, CANBus angleMotorBus, CANBus cancoderBus) {
         this.driveMotorID = driveMotorID;
         this.angleMotorID = angleMotorID;
         this.cancoderID = canCoderID;
         this.angleOffset = angleOffset;
+        this.driveMotorBus = driveMotorBus;
+        this.angleMotorBus = angleMotorBus;
+        this.cancoderBus = cancoderBus;
+    }
+
+    /**
+     * @return If the gyro and every device in every module are on one CANivore, which is what the
+     * odometry thread needs to wait on all of their signals at once
+     */
+    public static boolean allOnOneCANivore(CANBus gyroBus, SwerveModuleConstants... modules) {
+        String name = gyroBus.getName();
+        if (name.isEmpty() || name.equals("rio")) {
+            return false;
+        }
+        for (SwerveModuleConstants module : modules) {
+            if (!module.driveMotorBus.getName().equals(name)
+                    || !module.angleMotorBus.getName().equals(name)
+                    || !module.cancoderBus.getName().equals(name)) {
+                return false;
+            }
+        }
+        return true;
     }
 }
@@ -0,0 +1,31 @@
+package frc.lib.util;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+
+/*
+ * What Swerve needs from a pose estimator, so the WPILib one and SwerveEKFPoseEstimator can be swapped
+ * (Constants.Swerve.poseEstimator) or run side by side for comparison.
+ *
+ * Timestamps are FPGA seconds, the same clock the odometry thread and vision stamp their samples with.
+ */
+public interface SwervePoseEstimator {
+    /**
+     * Adds one odometry sample
+     * @return The estimated pose after it
+     */
+    Pose2d updateWithTime(double timestampSeconds, Rotation2d gyroAngle, SwerveModulePosition[] modulePositions);
+
+    /**
+     * Adds a vision measurement from the past
+     * @param xyStdDev Meters
+     * @param headingStdDev Radians
+     */
+    void addVisionMeasurement(Pose2d visionPose, double timestampSeconds, double xyStdDev, double headingStdDev);
+
+    /** Puts the robot somewhere, forgetting any history */
+    void resetPosition(Rotation2d gyroAngle, SwerveModulePosition[] modulePositions, Pose2d pose);
+
+    Pose2d getEstimatedPosition();
+}
@@ -0,0 +1,222 @@
+package frc.lib.util;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Translation2d;
+
+/*
+ * Sits between the requested chassis speeds and the modules, and only ever hands the modules
+ * setpoints they can actually reach from the last ones.
+ *
+ * Each loop it moves from the previous chassis speeds toward the requested ones, as far as it can
+ * without any module steering faster than maxSteerVelocity or changing wheel speed faster than the
+ * drive motor's torque allows. Modules are allowed to reverse instead of turning more than 90
+ * degrees. When the robot is stopped and the modules are pointed the wrong way, they get turned in
+ * place first instead of dragging the wheels sideways.
+ *
+ * Everything is kept in primitive arrays so this can run every loop without allocating.
+ */
+public class SwerveSetpointGenerator {
+    private static final double EPSILON = 1e-6;
+    private static final int SEARCH_ITERATIONS = 10;
+
+    private final Translation2d[] moduleLocations;
+    private final double maxSpeed;
+    private final double maxAcceleration;
+    private final double stallAcceleration;
+    private final double freeSpeed;
+    private final double maxSteerVelocity;
+
+    /* Robot relative chassis speeds and module setpoints from the last call */
+    private double prevVx = 0.0;
+    private double prevVy = 0.0;
+    private double prevOmega = 0.0;
+    private final double[] prevSpeeds;
+    private final double[] prevAngles;
+
+    /* Module targets for the requested speeds */
+    private final double[] desiredAngles;
+
+    /**
+     * @param moduleLocations Module positions from the center of the robot, meters
+     * @param maxSpeed Fastest any module is allowed to go, m/s
+     * @param maxAcceleration Wheel acceleration at the drive current limit, m/s^2
+     * @param stallAcceleration Wheel acceleration the motor could do at stall with no current limit, m/s^2
+     * @param freeSpeed Wheel speed at the drive motor's free speed, m/s
+     * @param maxSteerVelocity Fastest a module can turn, rad/s
+     */
+    public SwerveSetpointGenerator(Translation2d[] moduleLocations, double maxSpeed, double maxAcceleration,
+            double stallAcceleration, double freeSpeed, double maxSteerVelocity) {
+        this.moduleLocations = moduleLocations;
+        this.maxSpeed = maxSpeed;
+        this.maxAcceleration = maxAcceleration;
+        this.stallAcceleration = stallAcceleration;
+        this.freeSpeed = freeSpeed;
+        this.maxSteerVelocity = maxSteerVelocity;
+
+        prevSpeeds = new double[moduleLocations.length];
+        prevAngles = new double[moduleLocations.length];
+        desiredAngles = new double[moduleLocations.length];
+    }
+
+    /**
+     * Starts from where the robot actually is, call this when the generator's output hasn't been
+     * going to the modules (e.g. after being disabled)
+     * @param angles Current module angles, radians
+     */
+    public void reset(double vx, double vy, double omega, double[] angles) {
+        prevVx = vx;
+        prevVy = vy;
+        prevOmega = omega;
+        for (int i = 0; i < moduleLocations.length; i++) {
+            prevAngles[i] = angles[i];
+            prevSpeeds[i] = moduleVx(i, vx, omega) * Math.cos(angles[i]) + moduleVy(i, vy, omega) * Math.sin(angles[i]);
+        }
+    }
+
+    /**
+     * Gets the next feasible module setpoints on the way to the requested robot relative speeds
+     * @param dt Seconds until the next call
+     * @param outSpeeds Filled with module speeds, m/s, negative means driving backwards
+     * @param outAngles Filled with module angles, radians
+     */
+    public void generate(double vx, double vy, double omega, double dt, double[] outSpeeds, double[] outAngles) {
+        /* Same as SwerveDriveKinematics.desaturateWheelSpeeds, but on the chassis speeds */
+        double maxModuleSpeed = 0.0;
+        for (int i = 0; i < moduleLocations.length; i++) {
+            maxModuleSpeed = Math.max(maxModuleSpeed, Math.hypot(moduleVx(i, vx, omega), moduleVy(i, vy, omega)));
+        }
+        if (maxModuleSpeed > maxSpeed) {
+            double scale = maxSpeed / maxModuleSpeed;
+            vx *= scale;
+            vy *= scale;
+            omega *= scale;
+        }
+
+        boolean stopping = Math.abs(vx) < EPSILON && Math.abs(vy) < EPSILON && Math.abs(omega) < EPSILON;
+        double maxSteerStep = maxSteerVelocity * dt;
+
+        /* Stopped and the modules are pointed the wrong way, turn them before driving */
+        if (!stopping && isStopped()) {
+            boolean needsToSteer = false;
+            for (int i = 0; i < moduleLocations.length; i++) {
+                desiredAngles[i] = Math.atan2(moduleVy(i, vy, omega), moduleVx(i, vx, omega));
+                if (Math.abs(optimizedDelta(desiredAngles[i] - prevAngles[i])) > maxSteerStep) {
+                    needsToSteer = true;
+                }
+            }
+            if (needsToSteer) {
+                for (int i = 0; i < moduleLocations.length; i++) {
+                    double delta = optimizedDelta(desiredAngles[i] - prevAngles[i]);
+                    prevAngles[i] = MathUtil.angleModulus(prevAngles[i] + MathUtil.clamp(delta, -maxSteerStep, maxSteerStep));
+                    prevSpeeds[i] = 0.0;
+                    outAngles[i] = prevAngles[i];
+                    outSpeeds[i] = 0.0;
+                }
+                prevVx = 0.0;
+                prevVy = 0.0;
+                prevOmega = 0.0;
+                return;
+            }
+        }
+
+        /* Biggest fraction of the way from the previous speeds to the requested ones every module can manage */
+        double s = 1.0;
+        for (int i = 0; i < moduleLocations.length; i++) {
+            if (isFeasible(i, vx, vy, omega, s, dt)) {
+                continue;
+            }
+            double low = 0.0;
+            double high = s;
+            for (int iteration = 0; iteration < SEARCH_ITERATIONS; iteration++) {
+                double mid = (low + high) / 2.0;
+                if (isFeasible(i, vx, vy, omega, mid, dt)) {
+                    low = mid;
+                } else {
+                    high = mid;
+                }
+            }
+            s = low;
+        }
+
+        double nextVx = prevVx + s * (vx - prevVx);
+        double nextVy = prevVy + s * (vy - prevVy);
+        double nextOmega = prevOmega + s * (omega - prevOmega);
+
+        for (int i = 0; i < moduleLocations.length; i++) {
+            double moduleVx = moduleVx(i, nextVx, nextOmega);
+            double moduleVy = moduleVy(i, nextVy, nextOmega);
+            double speed = Math.hypot(moduleVx, moduleVy);
+
+            /* Keep the last angle when a module has nowhere to go instead of snapping it to 0 */
+            double angle = speed < EPSILON ? prevAngles[i] : Math.atan2(moduleVy, moduleVx);
+            double delta = MathUtil.angleModulus(angle - prevAngles[i]);
+            if (Math.abs(delta) > Math.PI / 2.0) {
+                delta = MathUtil.angleModulus(delta + Math.PI);
+                speed = -speed;
+            }
+
+            /* The search leaves slowly moving modules free to turn, still don't ask for more than they can do */
+            prevAngles[i] = MathUtil.angleModulus(prevAngles[i] + MathUtil.clamp(delta, -maxSteerStep, maxSteerStep));
+            prevSpeeds[i] = speed;
+            outAngles[i] = prevAngles[i];
+            outSpeeds[i] = speed;
+        }
+        prevVx = nextVx;
+        prevVy = nextVy;
+        prevOmega = nextOmega;
+    }
+
+    /* If module i can get to the speeds a fraction s of the way to the requested ones this loop */
+    private boolean isFeasible(int i, double vx, double vy, double omega, double s, double dt) {
+        double nextVx = prevVx + s * (vx - prevVx);
+        double nextVy = prevVy + s * (vy - prevVy);
+        double nextOmega = prevOmega + s * (omega - prevOmega);
+        double moduleVx = moduleVx(i, nextVx, nextOmega);
+        double moduleVy = moduleVy(i, nextVy, nextOmega);
+        double speed = Math.hypot(moduleVx, moduleVy);
+
+        /* Speed along the module's previous heading, reversed if it's quicker to drive backwards */
+        double signedSpeed = speed;
+        if (speed > EPSILON) {
+            double delta = MathUtil.angleModulus(Math.atan2(moduleVy, moduleVx) - prevAngles[i]);
+            if (Math.abs(delta) > Math.PI / 2.0) {
+                delta = MathUtil.angleModulus(delta + Math.PI);
+                signedSpeed = -speed;
+            }
+            /* A module barely moving can turn without dragging the robot around */
+            if (Math.abs(prevSpeeds[i]) > EPSILON && Math.abs(delta) > maxSteerVelocity * dt) {
+                return false;
+            }
+        }
+
+        double prevSpeed = prevSpeeds[i];
+        boolean speedingUp = Math.abs(signedSpeed) > Math.abs(prevSpeed) && signedSpeed * prevSpeed >= 0.0;
+        double acceleration = maxAcceleration;
+        if (speedingUp) {
+            /* Back EMF eats into the torque the faster the wheel is already spinning */
+            acceleration = Math.min(maxAcceleration, stallAcceleration * Math.max(0.0, 1.0 - Math.abs(prevSpeed) / freeSpeed));
+        }
+        return Math.abs(signedSpeed - prevSpeed) <= acceleration * dt + EPSILON;
+    }
+
+    private boolean isStopped() {
+        return Math.abs(prevVx) < EPSILON && Math.abs(prevVy) < EPSILON && Math.abs(prevOmega) < EPSILON;
+    }
+
+    private double moduleVx(int i, double vx, double omega) {
+        return vx - omega * moduleLocations[i].getY();
+    }
+
+    private double moduleVy(int i, double vy, double omega) {
+        return vy + omega * moduleLocations[i].getX();
+    }
+
+    /* Smallest turn to line a module up with a direction, allowing it to drive backwards */
+    private static double optimizedDelta(double delta) {
+        delta = MathUtil.angleModulus(delta);
+        if (Math.abs(delta) > Math.PI / 2.0) {
+            delta = MathUtil.angleModulus(delta + Math.PI);
+        }
+        return delta;
+    }
+}
@@ -0,0 +1,67 @@
+package frc.lib.util;
+
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StructArrayPublisher;
+import edu.wpi.first.networktables.StructPublisher;
+import edu.wpi.first.util.struct.Struct;
+
+/*
+ * Dashboard publishing with rate tiers. Publishers are made once up front (so topic keys are only
+ * built once) and subsystems check isDue() before setting them, so slow changing values don't get
+ * pushed out every loop.
+ *
+ * This is only for the dashboard, AdvantageKit's Logger is still what goes in the log.
+ */
+public final class Telemetry {
+    private static final NetworkTable table = NetworkTableInstance.getDefault().getTable("Telemetry");
+
+    private static long loopCount = 0;
+
+    public enum Rate {
+        /** Every loop, 50Hz */
+        FAST(1),
+        /** 10Hz */
+        MEDIUM(5),
+        /** 1Hz */
+        SLOW(50);
+
+        private final int loopsPerPublish;
+
+        Rate(int loopsPerPublish) {
+            this.loopsPerPublish = loopsPerPublish;
+        }
+    }
+
+    private Telemetry() {}
+
+    /** Call once at the end of every robot loop */
+    public static void advanceLoop() {
+        loopCount++;
+    }
+
+    /**
+     * @return If values on this tier should be published this loop
+     */
+    public static boolean isDue(Rate rate) {
+        return loopCount % rate.loopsPerPublish == 0;
+    }
+
+    public static <T> StructPublisher<T> structPublisher(String key, Struct<T> struct) {
+        return table.getStructTopic(key, struct).publish();
+    }
+
+    public static <T> StructArrayPublisher<T> structArrayPublisher(String key, Struct<T> struct) {
+        return table.getStructArrayTopic(key, struct).publish();
+    }
+
+    public static DoublePublisher doublePublisher(String key) {
+        return table.getDoubleTopic(key).publish();
+    }
+
+    public static DoubleArrayPublisher doubleArrayPublisher(String key) {
+        return table.getDoubleArrayTopic(key).publish();
+    }
+}
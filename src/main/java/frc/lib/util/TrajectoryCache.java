@@ -0,0 +1,98 @@
+package frc.lib.util;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import choreo.Choreo;
+import choreo.trajectory.SwerveSample;
+import choreo.trajectory.Trajectory;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+
+/*
+ * Loads every Choreo trajectory in deploy/choreo on a background thread at boot, so nothing gets
+ * parsed when auto starts. Each one is turned into a UniformTrajectory with the red alliance
+ * version already flipped.
+ */
+public class TrajectoryCache {
+    private static final String CHOREO_DIRECTORY = "choreo";
+    private static final String TRAJECTORY_EXTENSION = ".traj";
+
+    private static TrajectoryCache instance = null;
+
+    private final Map<String, UniformTrajectory> trajectories = new ConcurrentHashMap<>();
+    private Thread loader = null;
+
+    public static TrajectoryCache getInstance() {
+        if (instance == null) {
+            instance = new TrajectoryCache();
+        }
+        return instance;
+    }
+
+    private TrajectoryCache() {}
+
+    /**
+     * Starts loading every trajectory in the background, call from robotInit
+     */
+    public synchronized void startLoading() {
+        if (loader != null) {
+            return;
+        }
+        loader = new Thread(this::loadAll, "TrajectoryCache");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private void loadAll() {
+        File[] files = new File(Filesystem.getDeployDirectory(), CHOREO_DIRECTORY)
+            .listFiles((dir, file) -> file.endsWith(TRAJECTORY_EXTENSION));
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            String name = file.getName().substring(0, file.getName().length() - TRAJECTORY_EXTENSION.length());
+            load(name);
+        }
+    }
+
+    private Optional<UniformTrajectory> load(String name) {
+        Optional<Trajectory<SwerveSample>> trajectory = Choreo.loadTrajectory(name);
+        if (trajectory.isEmpty()) {
+            return Optional.empty();
+        }
+        /* Checked through a wildcard, so a differential trajectory doesn't blow up on a cast here */
+        Trajectory<?> loaded = trajectory.get();
+        if (loaded.samples().isEmpty() || !(loaded.samples().get(0) instanceof SwerveSample)) {
+            DriverStation.reportWarning("Trajectory " + name + " isn't a swerve trajectory, skipping it", false);
+            return Optional.empty();
+        }
+
+        UniformTrajectory uniform = new UniformTrajectory(trajectory.get(), UniformTrajectory.DEFAULT_SAMPLE_PERIOD);
+        trajectories.put(name, uniform);
+        return Optional.of(uniform);
+    }
+
+    /**
+     * @return If the background load is done
+     */
+    public boolean isLoaded() {
+        return loader != null && !loader.isAlive();
+    }
+
+    /**
+     * Gets a trajectory by file name (without .traj). If the background load hasn't gotten to it
+     * yet it gets loaded right now, which is slow.
+     */
+    public Optional<UniformTrajectory> get(String name) {
+        UniformTrajectory trajectory = trajectories.get(name);
+        if (trajectory != null) {
+            return Optional.of(trajectory);
+        }
+        DriverStation.reportWarning("Trajectory " + name + " wasn't preloaded, loading it now", false);
+        return load(name);
+    }
+}
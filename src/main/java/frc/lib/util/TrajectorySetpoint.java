@@ -0,0 +1,28 @@
+package frc.lib.util;
+
+/*
+ * Mutable trajectory sample, filled in by UniformTrajectory.sample() so following a trajectory
+ * doesn't allocate a new sample every loop. Same fields and units as Choreo's SwerveSample.
+ */
+public class TrajectorySetpoint {
+    public double timeSeconds;
+
+    /* Field position, meters and radians */
+    public double x;
+    public double y;
+    public double heading;
+
+    /* Field relative velocity, m/s and rad/s */
+    public double vx;
+    public double vy;
+    public double omega;
+
+    /* Field relative acceleration, m/s^2 and rad/s^2 */
+    public double ax;
+    public double ay;
+    public double alpha;
+
+    /* Field relative force on each module, newtons, FL FR BL BR */
+    public final double[] moduleForcesX = new double[4];
+    public final double[] moduleForcesY = new double[4];
+}
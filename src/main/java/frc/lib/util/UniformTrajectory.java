@@ -0,0 +1,138 @@
+package frc.lib.util;
+
+import java.util.Optional;
+
+import choreo.trajectory.SwerveSample;
+import choreo.trajectory.Trajectory;
+import edu.wpi.first.math.MathUtil;
+
+/*
+ * A Choreo trajectory resampled at a fixed time step into primitive arrays, for both alliances.
+ * Sampling is an index and a lerp, no searching and no allocation.
+ */
+public class UniformTrajectory {
+    public static final double DEFAULT_SAMPLE_PERIOD = 0.01;
+
+    private static final int BLUE = 0;
+    private static final int RED = 1;
+
+    private final String name;
+    private final double samplePeriod;
+    private final double totalTime;
+    private final int count;
+
+    /* [alliance][sample] */
+    private final double[][] x;
+    private final double[][] y;
+    private final double[][] heading;
+    private final double[][] vx;
+    private final double[][] vy;
+    private final double[][] omega;
+    private final double[][] ax;
+    private final double[][] ay;
+    private final double[][] alpha;
+    /* [alliance][module][sample] */
+    private final double[][][] moduleForcesX;
+    private final double[][][] moduleForcesY;
+
+    /**
+     * Builds the blue and red versions, slow, do this off the main thread
+     */
+    public UniformTrajectory(Trajectory<SwerveSample> trajectory, double samplePeriod) {
+        this.name = trajectory.name();
+        this.samplePeriod = samplePeriod;
+        this.totalTime = trajectory.getTotalTime();
+        this.count = (int) Math.ceil(totalTime / samplePeriod) + 1;
+
+        x = new double[2][count];
+        y = new double[2][count];
+        heading = new double[2][count];
+        vx = new double[2][count];
+        vy = new double[2][count];
+        omega = new double[2][count];
+        ax = new double[2][count];
+        ay = new double[2][count];
+        alpha = new double[2][count];
+        moduleForcesX = new double[2][4][count];
+        moduleForcesY = new double[2][4][count];
+
+        for (int i = 0; i < count; i++) {
+            Optional<SwerveSample> opt = trajectory.sampleAt(Math.min(i * samplePeriod, totalTime), false);
+            if (opt.isEmpty()) {
+                continue;
+            }
+            SwerveSample sample = opt.get();
+
+            x[BLUE][i] = sample.x;
+            y[BLUE][i] = sample.y;
+            heading[BLUE][i] = sample.heading;
+            vx[BLUE][i] = sample.vx;
+            vy[BLUE][i] = sample.vy;
+            omega[BLUE][i] = sample.omega;
+            ax[BLUE][i] = sample.ax;
+            ay[BLUE][i] = sample.ay;
+            alpha[BLUE][i] = sample.alpha;
+
+            /* Red is the same path rotated 180 degrees around the center of the field */
+            x[RED][i] = FlippingUtil.flipFieldX(sample.x);
+            y[RED][i] = FlippingUtil.flipFieldY(sample.y);
+            heading[RED][i] = FlippingUtil.flipFieldHeading(sample.heading);
+            vx[RED][i] = -sample.vx;
+            vy[RED][i] = -sample.vy;
+            omega[RED][i] = sample.omega;
+            ax[RED][i] = -sample.ax;
+            ay[RED][i] = -sample.ay;
+            alpha[RED][i] = sample.alpha;
+
+            double[] forcesX = sample.moduleForcesX();
+            double[] forcesY = sample.moduleForcesY();
+            for (int module = 0; module < 4 && module < forcesX.length; module++) {
+                moduleForcesX[BLUE][module][i] = forcesX[module];
+                moduleForcesY[BLUE][module][i] = forcesY[module];
+                moduleForcesX[RED][module][i] = -forcesX[module];
+                moduleForcesY[RED][module][i] = -forcesY[module];
+            }
+        }
+    }
+
+    /**
+     * Samples the trajectory at a time, clamped to the start and end
+     * @param timeSeconds Time since the start of the trajectory
+     * @param isRedAlliance Use the flipped version
+     * @param out Filled in with the sample, reuse it between calls
+     */
+    public void sample(double timeSeconds, boolean isRedAlliance, TrajectorySetpoint out) {
+        int alliance = isRedAlliance ? RED : BLUE;
+        double t = MathUtil.clamp(timeSeconds, 0.0, totalTime) / samplePeriod;
+        int i = Math.min((int) t, count - 1);
+        int next = Math.min(i + 1, count - 1);
+        double fraction = t - i;
+
+        out.timeSeconds = timeSeconds;
+        out.x = lerp(x[alliance], i, next, fraction);
+        out.y = lerp(y[alliance], i, next, fraction);
+        out.heading = heading[alliance][i] + MathUtil.angleModulus(heading[alliance][next] - heading[alliance][i]) * fraction;
+        out.vx = lerp(vx[alliance], i, next, fraction);
+        out.vy = lerp(vy[alliance], i, next, fraction);
+        out.omega = lerp(omega[alliance], i, next, fraction);
+        out.ax = lerp(ax[alliance], i, next, fraction);
+        out.ay = lerp(ay[alliance], i, next, fraction);
+        out.alpha = lerp(alpha[alliance], i, next, fraction);
+        for (int module = 0; module < 4; module++) {
+            out.moduleForcesX[module] = lerp(moduleForcesX[alliance][module], i, next, fraction);
+            out.moduleForcesY[module] = lerp(moduleForcesY[alliance][module], i, next, fraction);
+        }
+    }
+
+    private static double lerp(double[] values, int i, int next, double fraction) {
+        return values[i] + (values[next] - values[i]) * fraction;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getTotalTime() {
+        return totalTime;
+    }
+}
@@ -0,0 +1,60 @@
+package frc.lib.util;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+
+/*
+ * WPILib's SwerveDrivePoseEstimator behind SwervePoseEstimator. Each vision measurement rewinds to its
+ * timestamp and replays the odometry since, so its cost grows with how old the measurement is.
+ */
+public class WPILibSwervePoseEstimator implements SwervePoseEstimator {
+    private final SwerveDrivePoseEstimator estimator;
+
+    /* Reused for every vision measurement, the estimator copies it */
+    private final Matrix<N3, N1> visionStdDevs = VecBuilder.fill(0.0, 0.0, 0.0);
+
+    /**
+     * @param stateStdDevs Odometry x, y, heading std devs (meters, radians)
+     * @param visionStdDevs Default vision x, y, heading std devs, only used until the first measurement
+     */
+    public WPILibSwervePoseEstimator(
+        SwerveDriveKinematics kinematics,
+        Rotation2d gyroAngle,
+        SwerveModulePosition[] modulePositions,
+        Pose2d initialPose,
+        Matrix<N3, N1> stateStdDevs,
+        Matrix<N3, N1> visionStdDevs
+    ) {
+        estimator = new SwerveDrivePoseEstimator(kinematics, gyroAngle, modulePositions, initialPose, stateStdDevs, visionStdDevs);
+    }
+
+    @Override
+    public Pose2d updateWithTime(double timestampSeconds, Rotation2d gyroAngle, SwerveModulePosition[] modulePositions) {
+        return estimator.updateWithTime(timestampSeconds, gyroAngle, modulePositions);
+    }
+
+    @Override
+    public void addVisionMeasurement(Pose2d visionPose, double timestampSeconds, double xyStdDev, double headingStdDev) {
+        visionStdDevs.set(0, 0, xyStdDev);
+        visionStdDevs.set(1, 0, xyStdDev);
+        visionStdDevs.set(2, 0, headingStdDev);
+        estimator.addVisionMeasurement(visionPose, timestampSeconds, visionStdDevs);
+    }
+
+    @Override
+    public void resetPosition(Rotation2d gyroAngle, SwerveModulePosition[] modulePositions, Pose2d pose) {
+        estimator.resetPosition(gyroAngle, modulePositions, pose);
+    }
+
+    @Override
+    public Pose2d getEstimatedPosition() {
+        return estimator.getEstimatedPosition();
+    }
+}
@@ -31,6 +31,7 @@ public final class CTREConfigs {
         swerveAngleFXConfig.Slot0.kP = Constants.Swerve.angleKP;
         swerveAngleFXConfig.Slot0.kI = Constants.Swerve.angleKI;
         swerveAngleFXConfig.Slot0.kD = Constants.Swerve.angleKD;
+        swerveAngleFXConfig.Slot0.kV = Constants.Swerve.angleKV;
 
         /** Swerve Drive Motor Configuration */
         /* Motor Inverts and Neutral Mode */
@@ -51,6 +52,14 @@ public final class CTREConfigs {
         swerveDriveFXConfig.Slot0.kI = Constants.Swerve.driveKI;
         swerveDriveFXConfig.Slot0.kD = Constants.Swerve.driveKD;
 
+        /* Torque Current PID Config, in amps */
+        swerveDriveFXConfig.Slot1.kP = Constants.Swerve.driveTorqueKP;
+        swerveDriveFXConfig.Slot1.kI = 0.0;
+        swerveDriveFXConfig.Slot1.kD = 0.0;
+        swerveDriveFXConfig.Slot1.kS = Constants.Swerve.driveTorqueKS;
+        swerveDriveFXConfig.TorqueCurrent.PeakForwardTorqueCurrent = Constants.Swerve.driveTorqueCurrentLimit;
+        swerveDriveFXConfig.TorqueCurrent.PeakReverseTorqueCurrent = -Constants.Swerve.driveTorqueCurrentLimit;
+
         /* Open and Closed Loop Ramping */
         swerveDriveFXConfig.OpenLoopRamps.DutyCycleOpenLoopRampPeriod = Constants.Swerve.openLoopRamp;
         swerveDriveFXConfig.OpenLoopRamps.VoltageOpenLoopRampPeriod = Constants.Swerve.openLoopRamp;
@@ -1,5 +1,6 @@
 package frc.robot;
 
+import com.ctre.phoenix6.CANBus;
 import com.ctre.phoenix6.signals.InvertedValue;
 import com.ctre.phoenix6.signals.NeutralModeValue;
 import com.ctre.phoenix6.signals.SensorDirectionValue;
@@ -7,24 +8,70 @@ import com.ctre.phoenix6.signals.SensorDirectionValue;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.system.plant.DCMotor;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.RobotBase;
 import frc.lib.util.COTSTalonFXSwerveConstants;
 import frc.lib.util.SwerveModuleConstants;
 
 public final class Constants {
     public static final double stickDeadband = 0.1;
 
+    /* What the code is running on. Change simMode to REPLAY to replay a log in the desktop sim */
+    public static final Mode simMode = Mode.SIM;
+    public static final Mode currentMode = RobotBase.isReal() ? Mode.REAL : simMode;
+
+    public static enum Mode {
+        /** Running on a real robot */
+        REAL,
+        /** Running the physics simulator */
+        SIM,
+        /** Replaying a log file, as fast as possible */
+        REPLAY
+    }
+
     public final class PoseFilter {
         public static final double POSE_HEIGHT_TOLERANCE = 0.05;
 
+        /* How far vision and odometry can disagree on the robot's motion between two frames, meters */
         public static final double MAX_DIST_BETWEEN_POSE = 0.2;
+        /* Frames further apart than this aren't checked for motion consistency */
+        public static final double MOTION_MAX_GAP_SECONDS = 0.5;
+
+        public static final double MAX_AMBIGUITY = 0.2;
+
+        /* Meters, averaged over the tags seen */
+        public static final double MAX_SINGLE_TAG_DISTANCE = 4.0;
+        public static final double MAX_MULTI_TAG_DISTANCE = 6.0;
+
+        /* Vision xy std dev with one tag at 1 meter, scales with distance squared over tag count */
+        public static final double XY_STD_DEV_BASE = 0.1;
+        /* Measurements further than this many std devs (plus the estimator's own uncertainty) from the estimate are rejected */
+        public static final double INNOVATION_SIGMAS = 3.0;
+        public static final double ESTIMATOR_UNCERTAINTY = 0.3;
+        /* After this many rejections in a row a gate assumes the estimate is what's wrong and lets one through */
+        public static final int MAX_CONSECUTIVE_REJECTIONS = 10;
+        /* Vision heading is barely trusted, the gyro is much better */
+        public static final double HEADING_STD_DEV = 6.0;
+
+        /* Measurements captured within this long of each other are merged into one before going to the estimator */
+        public static final boolean FUSE_MEASUREMENTS = true;
+        public static final double FUSION_WINDOW_SECONDS = 0.02;
     }
 
 
     public static final class Swerve {
         public static final int pigeonID = 1;
 
+        /* CAN Buses */
+        public static final CANBus pigeonBus = new CANBus("Drivetrain");
+        /**
+         * Default bus for the module devices, the rio bus unless a CANivore's name is given here. Any module (or single
+         * device) can be moved in its SwerveModuleConstants.
+         */
+        public static final CANBus moduleBus = new CANBus(); //TODO: This must be tuned to specific robot
+
         public static final COTSTalonFXSwerveConstants chosenModule =  //TODO: This must be tuned to specific robot
         COTSTalonFXSwerveConstants.SDS.MK5n.KrakenX60X44(COTSTalonFXSwerveConstants.SDS.MK5n.driveRatios.L2);
 
@@ -35,11 +82,13 @@ public final class Constants {
 
         /* Swerve Kinematics 
          * No need to ever change this unless you are not doing a traditional rectangular/square 4 module swerve */
-         public static final SwerveDriveKinematics swerveKinematics = new SwerveDriveKinematics(
+         public static final Translation2d[] moduleTranslations = {
             new Translation2d(wheelBase / 2.0, trackWidth / 2.0),
             new Translation2d(wheelBase / 2.0, -trackWidth / 2.0),
             new Translation2d(-wheelBase / 2.0, trackWidth / 2.0),
-            new Translation2d(-wheelBase / 2.0, -trackWidth / 2.0));
+            new Translation2d(-wheelBase / 2.0, -trackWidth / 2.0)};
+
+         public static final SwerveDriveKinematics swerveKinematics = new SwerveDriveKinematics(moduleTranslations);
 
         /* Module Gear Ratios */
         public static final double driveGearRatio = chosenModule.driveGearRatio;
@@ -79,6 +128,11 @@ public final class Constants {
         public static final double driveKD = 0.0;
         public static final double driveKF = 0.0;
 
+        /* Drive Motor Torque Current (FOC) Values, amps. Used by trajectories that feed forward module forces */
+        public static final double driveTorqueKP = 5.0; //TODO: This must be tuned to specific robot
+        public static final double driveTorqueKS = 2.0; //TODO: This must be tuned to specific robot
+        public static final double driveTorqueCurrentLimit = 80.0;
+
         /* Drive Motor Characterization Values From SYSID */
         public static final double driveKS = 0.32; //TODO: This must be tuned to specific robot
         public static final double driveKV = 1.51;
@@ -90,6 +144,54 @@ public final class Constants {
         /** Radians per Second */
         public static final double maxAngularVelocity = 10.0; //TODO: This must be tuned to specific robot
 
+        /* Setpoint Generator, limits what drive() asks of the modules */
+        public static final double robotMassKg = 60.0; //TODO: This must be tuned to specific robot
+        public static final DCMotor driveMotor = DCMotor.getKrakenX60Foc(1);
+        /* Kraken X44 with FOC, the MK5n's steer motor. Volts, Nm, stall amps, free amps, free speed, off the X44 spec sheet */
+        public static final DCMotor angleMotor = new DCMotor(12.0, 5.01, 329.0, 2.0, Units.rotationsPerMinuteToRadiansPerSecond(7368.0), 1);
+        /** Meters per Second, wheel speed at the drive motor's free speed */
+        public static final double driveFreeSpeed = driveMotor.freeSpeedRadPerSec / driveGearRatio * wheelCircumference / (2.0 * Math.PI);
+        /** Meters per Second^2, one module pushing a quarter of the robot with no current limit */
+        public static final double driveStallAcceleration =
+            driveMotor.stallTorqueNewtonMeters * driveGearRatio / (wheelCircumference / (2.0 * Math.PI)) / (robotMassKg / 4.0);
+        /** Meters per Second^2, same thing at the drive current threshold */
+        public static final double maxDriveAcceleration =
+            driveMotor.KtNMPerAmp * driveCurrentThreshold * driveGearRatio / (wheelCircumference / (2.0 * Math.PI)) / (robotMassKg / 4.0);
+        /** Radians per Second, leaves some headroom under the angle motor's free speed */
+        public static final double maxSteerVelocity = angleMotor.freeSpeedRadPerSec / angleGearRatio * 0.8;
+        /** Volts per module rotation per second, what the angle motor needs to hold the steer velocity feedforward */
+        public static final double angleKV = 12.0 / (angleMotor.freeSpeedRadPerSec / (2.0 * Math.PI) / angleGearRatio);
+
+        /* Aiming, used by FieldElementRelativeDrive and LockedHeadingDrive */
+        /** Seconds from sending a heading command to the robot actually turning (loop, CAN and motor response) */
+        public static final double aimActuationLatency = 0.04; //TODO: This must be tuned to specific robot
+
+        /* Odometry Thread */
+        /**
+         * waitForAll needs the Pigeon2 and every module device on a single CANivore. Off in sim, where the
+         * thread has to follow the (possibly stepped) sim clock instead of real time.
+         */
+        public static final boolean odometryOnCANivore = RobotBase.isReal() && SwerveModuleConstants.allOnOneCANivore(
+            pigeonBus, Mod0.constants, Mod1.constants, Mod2.constants, Mod3.constants);
+        /** Hertz. The rio bus can't keep up with 250Hz so it falls back to a lower rate */
+        public static final double odometryFrequency = odometryOnCANivore ? 250.0 : 100.0;
+        /** Hertz, for status signals only read once per main loop. Signals nothing reads are turned off. */
+        public static final double loopSignalFrequency = 50.0;
+
+        /* Pose Estimation */
+        public static enum PoseEstimatorType {
+            /** WPILib's SwerveDrivePoseEstimator, replays odometry for every vision measurement */
+            WPILIB,
+            /** SwerveEKFPoseEstimator, constant time vision updates */
+            EKF
+        }
+        public static final PoseEstimatorType poseEstimator = PoseEstimatorType.WPILIB;
+        /** Runs the other estimator alongside on the same inputs and logs the difference. Off on the robot to save the loop time */
+        public static final boolean comparePoseEstimators = currentMode != Mode.REAL;
+        /** EKF odometry noise, variance (m^2) per meter driven and (rad^2) per radian turned */
+        public static final double odometryXYVariancePerMeter = 0.01; //TODO: This must be tuned to specific robot
+        public static final double odometryHeadingVariancePerRadian = 1e-4;
+
         /* Neutral Modes */
         public static final NeutralModeValue angleNeutralMode = NeutralModeValue.Coast;
         public static final NeutralModeValue driveNeutralMode = NeutralModeValue.Brake;
@@ -102,7 +204,7 @@ public final class Constants {
             public static final int canCoderID = 1;
             public static final Rotation2d angleOffset = Rotation2d.fromDegrees(0.0);
             public static final SwerveModuleConstants constants = 
-                new SwerveModuleConstants(driveMotorID, angleMotorID, canCoderID, angleOffset);
+                new SwerveModuleConstants(driveMotorID, angleMotorID, canCoderID, angleOffset, moduleBus);
         }
 
         /* Front Right Module - Module 1 */
@@ -112,7 +214,7 @@ public final class Constants {
             public static final int canCoderID = 2;
             public static final Rotation2d angleOffset = Rotation2d.fromDegrees(0.0);
             public static final SwerveModuleConstants constants = 
-                new SwerveModuleConstants(driveMotorID, angleMotorID, canCoderID, angleOffset);
+                new SwerveModuleConstants(driveMotorID, angleMotorID, canCoderID, angleOffset, moduleBus);
         }
         
         /* Back Left Module - Module 2 */
@@ -122,7 +224,7 @@ public final class Constants {
             public static final int canCoderID = 3;
             public static final Rotation2d angleOffset = Rotation2d.fromDegrees(0.0);
             public static final SwerveModuleConstants constants = 
-                new SwerveModuleConstants(driveMotorID, angleMotorID, canCoderID, angleOffset);
+                new SwerveModuleConstants(driveMotorID, angleMotorID, canCoderID, angleOffset, moduleBus);
         }
 
         /* Back Right Module - Module 3 */
@@ -132,7 +234,7 @@ public final class Constants {
             public static final int canCoderID = 4;
             public static final Rotation2d angleOffset = Rotation2d.fromDegrees(0.0);
             public static final SwerveModuleConstants constants = 
-                new SwerveModuleConstants(driveMotorID, angleMotorID, canCoderID, angleOffset);
+                new SwerveModuleConstants(driveMotorID, angleMotorID, canCoderID, angleOffset, moduleBus);
         }
     }
 
@@ -1,20 +1,15 @@
 package frc.robot;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Pose3d;
-import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Rotation3d;
-import edu.wpi.first.math.geometry.Transform2d;
-import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.util.Units;
-import edu.wpi.first.units.Unit;
+import frc.lib.util.AllianceTracker;
+import frc.lib.util.FlippingUtil;
 
 public class FieldLayout {
     public static final double FIELD_LENGTH = Units.inchesToMeters(690.876);
@@ -24,14 +19,47 @@ public class FieldLayout {
       Units.inchesToMeters(299.438);
 
     //add classes for field elements. For example in 2025, we had one for barge. The class was called barge
- 
+    //Make their poses with FieldElement so the red side is worked out once at boot, e.g.
+    //public static final FieldElement BARGE = new FieldElement(new Pose2d(...));
+
+    private static final int BLUE = 0;
+    private static final int RED = 1;
+
+    /* Swapped by the AllianceTracker listener, so FieldElement.get() never flips or asks DriverStation */
+    private static volatile int activeAlliance = BLUE;
+
+    static {
+        AllianceTracker.addListener(isRed -> activeAlliance = isRed ? RED : BLUE);
+    }
+
+    /* A field element pose given on the blue side, with the red side flipped once up front */
+    public static class FieldElement {
+        private final Pose2d[] poses = new Pose2d[2];
+
+        public FieldElement(Pose2d bluePose) {
+            poses[BLUE] = bluePose;
+            poses[RED] = FlippingUtil.flipFieldPose(bluePose);
+        }
+
+        /**
+         * @return The pose for our alliance
+         */
+        public Pose2d get() {
+            return poses[activeAlliance];
+        }
+
+        public Pose2d get(boolean isRedAlliance) {
+            return poses[isRedAlliance ? RED : BLUE];
+        }
+    }
+
     public static class AprilTags {
         
         /* Degrees face the red alliance drivestations at 0 radians. 
          * View https://firstfrc.blob.core.windows.net/frc2024/FieldAssets/2024LayoutMarkingDiagram.pdf
          * for more information
         */
-        public static final List<AprilTag> APRIL_TAG_POSE = new ArrayList<AprilTag>(Arrays.asList(
+        public static final List<AprilTag> APRIL_TAG_POSE = List.of(
             new AprilTag(1,
                 new Pose3d(
                     Units.inchesToMeters(657.37),
@@ -235,6 +263,40 @@ public class FieldLayout {
                     new Rotation3d(0, 0, Units.degreesToRadians(300))
                 )
             )
-        ));
+        );
+
+        /* Shared by everything that needs a layout (pose estimators, vision sim), don't call setOrigin() on it */
+        public static final AprilTagFieldLayout LAYOUT = new AprilTagFieldLayout(APRIL_TAG_POSE, FIELD_LENGTH, FIELD_WIDTH);
+
+        /* Tag poses indexed by id, null for ids that aren't on the field */
+        private static final Pose3d[] TAG_POSES;
+        private static final Pose2d[] TAG_POSES_2D;
+
+        static {
+            int maxId = 0;
+            for (AprilTag tag : APRIL_TAG_POSE) {
+                maxId = Math.max(maxId, tag.ID);
+            }
+            TAG_POSES = new Pose3d[maxId + 1];
+            TAG_POSES_2D = new Pose2d[maxId + 1];
+            for (AprilTag tag : APRIL_TAG_POSE) {
+                TAG_POSES[tag.ID] = tag.pose;
+                TAG_POSES_2D[tag.ID] = tag.pose.toPose2d();
+            }
+        }
+
+        /**
+         * @return The tag's pose, or null if there's no tag with that id
+         */
+        public static Pose3d getTagPose(int id) {
+            return id >= 0 && id < TAG_POSES.length ? TAG_POSES[id] : null;
+        }
+
+        /**
+         * @return The tag's pose on the floor, or null if there's no tag with that id
+         */
+        public static Pose2d getTagPose2d(int id) {
+            return id >= 0 && id < TAG_POSES_2D.length ? TAG_POSES_2D[id] : null;
+        }
     }
 }
@@ -0,0 +1,52 @@
+package frc.robot;
+
+import org.littletonrobotics.junction.AutoLog;
+
+/*
+ * Hardware layer for a swerve module. Everything SwerveModule reads from the module goes through
+ * ModuleIOInputs so it's logged and can be replayed. Units are mechanism rotations, conversions to
+ * meters are done in SwerveModule.
+ *
+ * The default (empty) implementation is what gets used in replay.
+ */
+public interface ModuleIO {
+    @AutoLog
+    public static class ModuleIOInputs {
+        public boolean driveConnected = false;
+        public double drivePositionRotations = 0.0;
+        public double driveVelocityRPS = 0.0;
+        public double driveAppliedVolts = 0.0;
+
+        public boolean angleConnected = false;
+        public double angleRotations = 0.0;
+        public double angleAppliedVolts = 0.0;
+
+        public boolean cancoderConnected = false;
+        public double cancoderRotations = 0.0;
+
+        /* Samples from the odometry thread since the last loop */
+        public double[] odometryTimestamps = new double[] {};
+        public double[] odometryDrivePositionsRotations = new double[] {};
+        public double[] odometryAngleRotations = new double[] {};
+    }
+
+    public default void updateInputs(ModuleIOInputs inputs) {}
+
+    /** Runs the drive motor open loop, -1 to 1 */
+    public default void setDriveOpenLoop(double output) {}
+
+    /** Runs the drive motor closed loop, in wheel rotations per second with a voltage feedforward */
+    public default void setDriveVelocity(double velocityRPS, double feedforwardVolts) {}
+
+    /**
+     * Runs the drive motor closed loop with torque current (FOC) control, in wheel rotations per second with a
+     * current feedforward in amps. Battery voltage doesn't change the response like it does with voltage control.
+     */
+    public default void setDriveVelocityTorqueCurrent(double velocityRPS, double feedforwardAmps) {}
+
+    /** Runs the angle motor to a position, in module rotations, with the setpoint's velocity (rotations per second) fed forward */
+    public default void setAnglePosition(double rotations, double velocityRPS) {}
+
+    /** Seeds the angle motor with the absolute encoder reading (minus the module's offset) */
+    public default void resetToAbsolute() {}
+}
@@ -0,0 +1,115 @@
+package frc.robot;
+
+import com.ctre.phoenix6.signals.InvertedValue;
+import com.ctre.phoenix6.signals.SensorDirectionValue;
+import com.ctre.phoenix6.sim.CANcoderSimState;
+import com.ctre.phoenix6.sim.ChassisReference;
+import com.ctre.phoenix6.sim.TalonFXSimState;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.math.system.plant.LinearSystemId;
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.simulation.DCMotorSim;
+import frc.lib.math.Conversions;
+import frc.lib.util.SwerveModuleConstants;
+
+/*
+ * Simulated module. Runs the real TalonFX/CANcoder code with Phoenix's simulated devices, and a
+ * physics model of the drive and steer motors feeds their sim state. That way the motor
+ * controllers' own closed loops and the odometry thread run the same as on the robot.
+ *
+ * simulationPeriodic() is called by SwerveDriveSim's high rate notifier, not the main loop.
+ */
+public class ModuleIOSim extends ModuleIOTalonFX {
+    /* Same motor models the setpoint generator and feedforwards use */
+    private static final DCMotor DRIVE_GEARBOX = Constants.Swerve.driveMotor;
+    private static final DCMotor ANGLE_GEARBOX = Constants.Swerve.angleMotor;
+
+    /* kg*m^2, rough guesses for a wheel and a steering assembly */
+    private static final double DRIVE_MOI = 0.025;
+    private static final double ANGLE_MOI = 0.004;
+
+    private final DCMotorSim driveSim = new DCMotorSim(
+        LinearSystemId.createDCMotorSystem(DRIVE_GEARBOX, DRIVE_MOI, Constants.Swerve.driveGearRatio), DRIVE_GEARBOX);
+    private final DCMotorSim angleSim = new DCMotorSim(
+        LinearSystemId.createDCMotorSystem(ANGLE_GEARBOX, ANGLE_MOI, Constants.Swerve.angleGearRatio), ANGLE_GEARBOX);
+
+    private final TalonFXSimState driveSimState;
+    private final TalonFXSimState angleSimState;
+    private final CANcoderSimState cancoderSimState;
+
+    /* Where the module was pointing on boot, the angle motor's rotor counts from here */
+    private final double angleStartRotations;
+
+    public ModuleIOSim(SwerveModuleConstants moduleConstants) {
+        super(moduleConstants);
+
+        driveSimState = mDriveMotor.getSimState();
+        angleSimState = mAngleMotor.getSimState();
+        cancoderSimState = angleEncoder.getSimState();
+
+        driveSimState.Orientation = toChassisReference(Constants.Swerve.driveMotorInvert);
+        angleSimState.Orientation = toChassisReference(Constants.Swerve.angleMotorInvert);
+        cancoderSimState.Orientation = Constants.Swerve.cancoderInvert == SensorDirectionValue.Clockwise_Positive
+            ? ChassisReference.Clockwise_Positive
+            : ChassisReference.CounterClockwise_Positive;
+
+        /*
+         * The simulated CANcoder starts out reading 0, so the module boots pointing at -offset,
+         * same as a real module would boot wherever it was left.
+         */
+        angleStartRotations = -angleOffset.getRotations();
+        angleSim.setState(Units.rotationsToRadians(angleStartRotations), 0.0);
+    }
+
+    private static ChassisReference toChassisReference(InvertedValue invert) {
+        return invert == InvertedValue.Clockwise_Positive
+            ? ChassisReference.Clockwise_Positive
+            : ChassisReference.CounterClockwise_Positive;
+    }
+
+    /**
+     * Steps the motor models and pushes the result into the simulated devices
+     * @param dtSeconds Time since the last step
+     */
+    public void simulationPeriodic(double dtSeconds) {
+        double batteryVolts = RobotController.getBatteryVoltage();
+        driveSimState.setSupplyVoltage(batteryVolts);
+        angleSimState.setSupplyVoltage(batteryVolts);
+        cancoderSimState.setSupplyVoltage(batteryVolts);
+
+        /* Whatever the motor controllers decided to output */
+        driveSim.setInputVoltage(driveSimState.getMotorVoltage());
+        angleSim.setInputVoltage(angleSimState.getMotorVoltage());
+        driveSim.update(dtSeconds);
+        angleSim.update(dtSeconds);
+
+        /* TalonFX sim state is in rotor rotations, before SensorToMechanismRatio */
+        double driveRotations = driveSim.getAngularPositionRotations();
+        double driveRPS = Units.radiansToRotations(driveSim.getAngularVelocityRadPerSec());
+        driveSimState.setRawRotorPosition(driveRotations * Constants.Swerve.driveGearRatio);
+        driveSimState.setRotorVelocity(driveRPS * Constants.Swerve.driveGearRatio);
+
+        double angleRotations = angleSim.getAngularPositionRotations();
+        double angleRPS = Units.radiansToRotations(angleSim.getAngularVelocityRadPerSec());
+        angleSimState.setRawRotorPosition((angleRotations - angleStartRotations) * Constants.Swerve.angleGearRatio);
+        angleSimState.setRotorVelocity(angleRPS * Constants.Swerve.angleGearRatio);
+
+        /* The CANcoder is on the module itself, so it reads the mechanism plus its offset */
+        cancoderSimState.setRawPosition(angleRotations + angleOffset.getRotations());
+        cancoderSimState.setVelocity(angleRPS);
+    }
+
+    /**
+     * @return What the module is actually doing in the sim, used to simulate the gyro
+     */
+    public SwerveModuleState getSimulatedState() {
+        return new SwerveModuleState(
+            Conversions.RPSToMPS(Units.radiansToRotations(driveSim.getAngularVelocityRadPerSec()), Constants.Swerve.wheelCircumference),
+            Rotation2d.fromRadians(angleSim.getAngularPositionRad())
+        );
+    }
+}
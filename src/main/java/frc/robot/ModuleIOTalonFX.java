@@ -0,0 +1,158 @@
+package frc.robot;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.StatusSignal;
+import com.ctre.phoenix6.controls.DutyCycleOut;
+import com.ctre.phoenix6.controls.PositionVoltage;
+import com.ctre.phoenix6.controls.VelocityTorqueCurrentFOC;
+import com.ctre.phoenix6.controls.VelocityVoltage;
+import com.ctre.phoenix6.hardware.CANcoder;
+import com.ctre.phoenix6.hardware.ParentDevice;
+import com.ctre.phoenix6.hardware.TalonFX;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.units.measure.Angle;
+import edu.wpi.first.units.measure.AngularVelocity;
+import edu.wpi.first.units.measure.Voltage;
+import frc.lib.util.CANBusMonitor;
+import frc.lib.util.DeviceConfigurator;
+import frc.lib.util.SignalRegistry;
+import frc.lib.util.SwerveModuleConstants;
+import frc.robot.subsystems.OdometryThread;
+
+/* Real module hardware, two TalonFXs and a CANcoder */
+public class ModuleIOTalonFX implements ModuleIO {
+    protected final Rotation2d angleOffset;
+
+    protected final TalonFX mAngleMotor;
+    protected final TalonFX mDriveMotor;
+    protected final CANcoder angleEncoder;
+
+    /* drive motor control requests */
+    private final DutyCycleOut driveDutyCycle = new DutyCycleOut(0);
+    private final VelocityVoltage driveVelocity = new VelocityVoltage(0);
+    /* Slot 1 has the torque current gains, needs Phoenix Pro */
+    private final VelocityTorqueCurrentFOC driveVelocityTorqueCurrent = new VelocityTorqueCurrentFOC(0).withSlot(1);
+
+    /* angle motor control requests */
+    private final PositionVoltage anglePosition = new PositionVoltage(0);
+
+    /* cached signal handles */
+    private final StatusSignal<Angle> drivePositionSignal;
+    private final StatusSignal<AngularVelocity> driveVelocitySignal;
+    private final StatusSignal<Voltage> driveAppliedVoltsSignal;
+    private final StatusSignal<Angle> anglePositionSignal;
+    private final StatusSignal<Voltage> angleAppliedVoltsSignal;
+    private final StatusSignal<Angle> cancoderSignal;
+
+    /* odometry thread samples, drained into reused arrays */
+    private final OdometryThread.SampleQueue timestampQueue;
+    private final OdometryThread.SampleQueue drivePositionQueue;
+    private final OdometryThread.SampleQueue anglePositionQueue;
+    private final double[][] timestampBuffers = new double[OdometryThread.QUEUE_SIZE + 1][];
+    private final double[][] drivePositionBuffers = new double[OdometryThread.QUEUE_SIZE + 1][];
+    private final double[][] anglePositionBuffers = new double[OdometryThread.QUEUE_SIZE + 1][];
+
+    public ModuleIOTalonFX(SwerveModuleConstants moduleConstants) {
+        this.angleOffset = moduleConstants.angleOffset;
+
+        /*
+         * Configs are applied in parallel with every other device, Swerve waits for them all
+         * and then resets the angle motors to absolute
+         */
+        angleEncoder = new CANcoder(moduleConstants.cancoderID, moduleConstants.cancoderBus);
+        DeviceConfigurator.configure(angleEncoder, Robot.ctreConfigs.swerveCANcoderConfig, null);
+        cancoderSignal = angleEncoder.getAbsolutePosition();
+
+        mAngleMotor = new TalonFX(moduleConstants.angleMotorID, moduleConstants.angleMotorBus);
+        DeviceConfigurator.configure(mAngleMotor, Robot.ctreConfigs.swerveAngleFXConfig, null);
+
+        mDriveMotor = new TalonFX(moduleConstants.driveMotorID, moduleConstants.driveMotorBus);
+        DeviceConfigurator.configure(mDriveMotor, Robot.ctreConfigs.swerveDriveFXConfig, () -> mDriveMotor.setPosition(0.0));
+
+        drivePositionSignal = mDriveMotor.getPosition();
+        driveVelocitySignal = mDriveMotor.getVelocity();
+        driveAppliedVoltsSignal = mDriveMotor.getMotorVoltage();
+        anglePositionSignal = mAngleMotor.getPosition();
+        angleAppliedVoltsSignal = mAngleMotor.getMotorVoltage();
+        /* Refreshed by Swerve once per loop together with every other drivetrain signal */
+        SignalRegistry.register(moduleConstants.driveMotorBus, drivePositionSignal, driveVelocitySignal, driveAppliedVoltsSignal);
+        SignalRegistry.register(moduleConstants.angleMotorBus, anglePositionSignal, angleAppliedVoltsSignal);
+        SignalRegistry.register(moduleConstants.cancoderBus, cancoderSignal);
+
+        /* StatusSignals aren't thread safe, so the odometry thread gets its own copies of the ones it shares with the main loop */
+        timestampQueue = OdometryThread.getInstance().makeTimestampQueue();
+        drivePositionQueue = OdometryThread.getInstance().registerSignal(moduleConstants.driveMotorBus, drivePositionSignal.clone());
+        anglePositionQueue = OdometryThread.getInstance().registerSignal(moduleConstants.angleMotorBus, anglePositionSignal.clone());
+
+        /*
+         * Once the configs and setPosition() are done, so they can't race. Odometry signals were set to the odometry
+         * rate above, everything else read here only needs the loop rate.
+         */
+        DeviceConfigurator.afterAll(() -> {
+            BaseStatusSignal.setUpdateFrequencyForAll(
+                Constants.Swerve.loopSignalFrequency,
+                driveVelocitySignal, driveAppliedVoltsSignal, angleAppliedVoltsSignal, cancoderSignal
+            );
+            /* Turns off every signal that wasn't given a rate */
+            ParentDevice.optimizeBusUtilizationForAll(mDriveMotor, mAngleMotor, angleEncoder);
+        });
+
+        CANBusMonitor.track(moduleConstants.driveMotorBus);
+        CANBusMonitor.track(moduleConstants.angleMotorBus);
+        CANBusMonitor.track(moduleConstants.cancoderBus);
+    }
+
+    @Override
+    public void updateInputs(ModuleIOInputs inputs) {
+        /* SignalRegistry.refreshAll() already ran this loop */
+        inputs.driveConnected = BaseStatusSignal.isAllGood(drivePositionSignal, driveVelocitySignal, driveAppliedVoltsSignal);
+        inputs.drivePositionRotations = drivePositionSignal.getValueAsDouble();
+        inputs.driveVelocityRPS = driveVelocitySignal.getValueAsDouble();
+        inputs.driveAppliedVolts = driveAppliedVoltsSignal.getValueAsDouble();
+
+        inputs.angleConnected = BaseStatusSignal.isAllGood(anglePositionSignal, angleAppliedVoltsSignal);
+        inputs.angleRotations = anglePositionSignal.getValueAsDouble();
+        inputs.angleAppliedVolts = angleAppliedVoltsSignal.getValueAsDouble();
+
+        inputs.cancoderConnected = BaseStatusSignal.isAllGood(cancoderSignal);
+        inputs.cancoderRotations = cancoderSignal.getValueAsDouble();
+
+        /* Caller holds OdometryThread.odometryLock, so all three queues are the same length */
+        inputs.odometryTimestamps = OdometryThread.drain(timestampQueue, timestampBuffers);
+        inputs.odometryDrivePositionsRotations = OdometryThread.drain(drivePositionQueue, drivePositionBuffers);
+        inputs.odometryAngleRotations = OdometryThread.drain(anglePositionQueue, anglePositionBuffers);
+    }
+
+    @Override
+    public void setDriveOpenLoop(double output) {
+        driveDutyCycle.Output = output;
+        mDriveMotor.setControl(driveDutyCycle);
+    }
+
+    @Override
+    public void setDriveVelocity(double velocityRPS, double feedforwardVolts) {
+        driveVelocity.Velocity = velocityRPS;
+        driveVelocity.FeedForward = feedforwardVolts;
+        mDriveMotor.setControl(driveVelocity);
+    }
+
+    @Override
+    public void setDriveVelocityTorqueCurrent(double velocityRPS, double feedforwardAmps) {
+        driveVelocityTorqueCurrent.Velocity = velocityRPS;
+        driveVelocityTorqueCurrent.FeedForward = feedforwardAmps;
+        mDriveMotor.setControl(driveVelocityTorqueCurrent);
+    }
+
+    @Override
+    public void setAnglePosition(double rotations, double velocityRPS) {
+        mAngleMotor.setControl(anglePosition.withPosition(rotations).withVelocity(velocityRPS));
+    }
+
+    @Override
+    public void resetToAbsolute() {
+        /* Not worth trusting a stale reading for this, it only happens on boot and when asked */
+        double absolutePosition = cancoderSignal.refresh().getValueAsDouble() - angleOffset.getRotations();
+        mAngleMotor.setPosition(absolutePosition);
+    }
+}
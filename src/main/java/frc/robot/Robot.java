@@ -14,11 +14,18 @@ import org.littletonrobotics.junction.wpilog.WPILOGWriter;
 import org.littletonrobotics.junction.LoggedRobot;
 import org.littletonrobotics.junction.Logger;
 
+import edu.wpi.first.hal.NotifierJNI;
 import edu.wpi.first.wpilibj.DataLogManager;
 import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotController;
 import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.lib.util.LoopProfiler;
+import frc.lib.util.Telemetry;
+import frc.lib.util.AllianceTracker;
+import frc.lib.util.CANBusMonitor;
+import frc.lib.util.TrajectoryCache;
 
 /**
  * The VM is configured to automatically run this class, and to call the functions corresponding to
@@ -33,6 +40,17 @@ public class Robot extends LoggedRobot{
 
   private RobotContainer m_robotContainer;
 
+  private final LoopProfiler.Stage schedulerStage = LoopProfiler.stage("Scheduler");
+  /* Everything LoggedRobot does between two loopFunc() calls, see loopFunc() */
+  private final LoopProfiler.Stage logFlushStage = LoopProfiler.stage("LogFlush");
+  private boolean logFlushRunning = false;
+
+  /* Paces the loop when it isn't a replay, see loopFunc() */
+  private final int loopNotifier = NotifierJNI.initializeNotifier();
+  private final long loopPeriodMicros = (long) (getPeriod() * 1e6);
+  private boolean paceLoop = false;
+  private long nextLoopMicros = 0;
+
   /**
    * This function is run when the robot is first started up and should be used for any
    * initialization code.
@@ -44,14 +62,29 @@ public class Robot extends LoggedRobot{
 
     Logger.recordMetadata("ProjectName", "TBD"); // Set a metadata value
 
-    if (isReal()) {
+    switch (Constants.currentMode) {
+      case REAL:
         Logger.addDataReceiver(new WPILOGWriter()); // Log to a USB stick ("/U/logs")
         Logger.addDataReceiver(new NT4Publisher()); // Publish data to NetworkTables
-    } else {
+        break;
+
+      case SIM:
+        Logger.addDataReceiver(new NT4Publisher()); // Publish data to NetworkTables
+        break;
+
+      case REPLAY:
         setUseTiming(false); // Run as fast as possible
         String logPath = LogFileUtil.findReplayLog(); // Pull the replay log from AdvantageScope (or prompt the user)
         Logger.setReplaySource(new WPILOGReader(logPath)); // Read replay log
         Logger.addDataReceiver(new WPILOGWriter(LogFileUtil.addPathSuffix(logPath, "_actualLog"))); // Save outputs to a new log
+        break;
+    }
+
+    if (Constants.currentMode != Constants.Mode.REPLAY) {
+      setUseTiming(false); // Paced by loopFunc() instead
+      paceLoop = true;
+      NotifierJNI.setNotifierName(loopNotifier, "RobotLoop");
+      nextLoopMicros = RobotController.getFPGATime();
     }
     
     Logger.start(); // Start logging! No more data receivers, replay sources, or metadata values may be added.
@@ -59,7 +92,13 @@ public class Robot extends LoggedRobot{
     DriverStation.startDataLog(DataLogManager.getLog());
 
 
+    /* Parse every auto trajectory now instead of when auto starts */
+    TrajectoryCache.getInstance().startLoading();
+    AllianceTracker.start();
+
     m_robotContainer = new RobotContainer();
+
+    CommandScheduler.getInstance().onCommandExecute(LoopProfiler::recordCommandExecute);
   }
 
 
@@ -76,7 +115,43 @@ public class Robot extends LoggedRobot{
     // commands, running already-scheduled commands, removing finished or interrupted commands,
     // and running subsystem periodic() methods.  This must be called from the robot's periodic
     // block in order for anything in the Command-based framework to work.
+    LoopProfiler.startCycle();
+
+    schedulerStage.start();
     CommandScheduler.getInstance().run();
+    schedulerStage.stop();
+
+    CANBusMonitor.periodic();
+    Telemetry.advanceLoop();
+  }
+
+  /**
+   * LoggedRobot flushes the log (and reads the next loop's inputs) right around loopFunc(), where user code
+   * can't time it. So outside of replay the robot waits for the next loop at the end of loopFunc() instead of
+   * letting LoggedRobot wait in between. That leaves only the logger's work between two loopFunc() calls, and
+   * it's timed as the LogFlush stage.
+   *
+   * The inputs still get read right before user code runs, the outputs are just sent after the wait instead
+   * of before it. AdvantageKit's own LoggedRobot/UserCodeMS now includes the wait, use LoopProfiler's stages
+   * for user code time.
+   */
+  @Override
+  protected void loopFunc() {
+    if (logFlushRunning) {
+      logFlushStage.stop();
+    }
+
+    super.loopFunc();
+
+    if (paceLoop) {
+      /* Same as LoggedRobot, after an overrun start again from now instead of trying to catch up */
+      nextLoopMicros = Math.max(nextLoopMicros + loopPeriodMicros, RobotController.getFPGATime());
+      NotifierJNI.updateNotifierAlarm(loopNotifier, nextLoopMicros);
+      NotifierJNI.waitForNotifierAlarm(loopNotifier);
+    }
+
+    logFlushStage.start();
+    logFlushRunning = true;
   }
 
   /** This function is called once each time the robot enters Disabled mode. */
@@ -125,4 +200,10 @@ public class Robot extends LoggedRobot{
   /** This function is called periodically during test mode. */
   @Override
   public void testPeriodic() {}
+
+  /** This function is called periodically whilst in simulation. */
+  @Override
+  public void simulationPeriodic() {
+    m_robotContainer.simulationPeriodic();
+  }
 }
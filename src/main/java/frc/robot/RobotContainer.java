@@ -1,7 +1,5 @@
 package frc.robot;
 
-import org.photonvision.PhotonCamera;
-
 import edu.wpi.first.math.geometry.Rotation3d;
 import edu.wpi.first.math.geometry.Transform3d;
 import edu.wpi.first.math.geometry.Translation3d;
@@ -16,6 +14,9 @@ import frc.robot.autos.*;
 import frc.robot.commands.*;
 import frc.robot.subsystems.*;
 import frc.robot.subsystems.Vision.Camera;
+import frc.robot.subsystems.Vision.CameraIO;
+import frc.robot.subsystems.Vision.CameraIOPhotonVision;
+import frc.robot.subsystems.Vision.CameraIOSim;
 import frc.robot.subsystems.Vision.VisionSubsystem;
 
 /**
@@ -29,21 +30,21 @@ public class RobotContainer {
     private final Joystick driver = new Joystick(0);
 
      /* When viewed from behind the bot */ //OFFSETS NEED TO BE REDONE I HAVE NO CLUE WHAT BOT THESE ARE FROM
-    private final Camera leftFrontCam = new Camera(new PhotonCamera("Left_Forward"), 
+    private static final Transform3d leftFrontCamTransform = 
         new Transform3d(new Translation3d(0.206, 0.265, 0.208), //TODO re-do offsets
-        new Rotation3d(0, -1.08, 0.524)));
+        new Rotation3d(0, -1.08, 0.524));
         
-    private final Camera rightFrontCam = new Camera(new PhotonCamera("Right_Forward"), 
+    private static final Transform3d rightFrontCamTransform = 
         new Transform3d(new Translation3d(0.206, -0.265, 0.208), //TODO re-do offsets
-        new Rotation3d(0, -1.08, -0.524)));
+        new Rotation3d(0, -1.08, -0.524));
 
-    private final Camera rightRearCam = new Camera(new PhotonCamera("Right_Rear"), 
+    private static final Transform3d rightRearCamTransform = 
         new Transform3d(new Translation3d(-0.374, -0.262, 0.195), //TODO re-do offsets
-        new Rotation3d(0, 0, -3.88)));
+        new Rotation3d(0, 0, -3.88));
         
-    private final Camera leftRearCam = new Camera(new PhotonCamera("Left_Rear"), 
+    private static final Transform3d leftRearCamTransform = 
         new Transform3d(new Translation3d(-0.374, 0.262, 0.195), //TODO re-do offsets
-        new Rotation3d(0, 0, 3.88)));
+        new Rotation3d(0, 0, 3.88));
 
     //private final Camera LLCam = new Camera(new PhotonCamera("LLCam"), new Transform3d(new Translation3d(0.135, 0, 0.204), new Rotation3d(0, -1.04, 0)));*/
 
@@ -58,14 +59,93 @@ public class RobotContainer {
 
     /* Subsystems */
     
-    private final VisionSubsystem s_VisionSubystem = new VisionSubsystem(
-            new Camera[]{rightFrontCam, leftFrontCam, rightRearCam, leftRearCam});
+    private final VisionSubsystem s_VisionSubystem;
 
-    private final Swerve s_Swerve = new Swerve(s_VisionSubystem);
+    private final Swerve s_Swerve;
 
+    /* Only exists in SIM */
+    private SwerveDriveSim driveSim = null;
 
     /** The container for the robot. Contains subsystems, OI devices, and commands. */
     public RobotContainer() {
+        this(true);
+    }
+
+    /**
+     * @param simulateVision Whether the cameras are simulated in SIM. Off gives them the empty IO, which keeps
+     * the PhotonVision sim's threads out of headless runs so they're repeatable
+     */
+    public RobotContainer(boolean simulateVision) {
+        /* Pick the hardware layer, replay only gets the empty IO so everything comes from the log */
+        switch (Constants.currentMode) {
+            case REAL:
+                s_VisionSubystem = new VisionSubsystem(new Camera[]{
+                    new Camera("Right_Forward", new CameraIOPhotonVision("Right_Forward", rightFrontCamTransform)),
+                    new Camera("Left_Forward", new CameraIOPhotonVision("Left_Forward", leftFrontCamTransform)),
+                    new Camera("Right_Rear", new CameraIOPhotonVision("Right_Rear", rightRearCamTransform)),
+                    new Camera("Left_Rear", new CameraIOPhotonVision("Left_Rear", leftRearCamTransform))
+                });
+                s_Swerve = new Swerve(
+                    new GyroIOPigeon2(),
+                    new ModuleIOTalonFX(Constants.Swerve.Mod0.constants),
+                    new ModuleIOTalonFX(Constants.Swerve.Mod1.constants),
+                    new ModuleIOTalonFX(Constants.Swerve.Mod2.constants),
+                    new ModuleIOTalonFX(Constants.Swerve.Mod3.constants),
+                    s_VisionSubystem
+                );
+                break;
+
+            case SIM:
+                s_VisionSubystem = simulateVision
+                    ? new VisionSubsystem(new Camera[]{
+                        new Camera("Right_Forward", new CameraIOSim("Right_Forward", rightFrontCamTransform)),
+                        new Camera("Left_Forward", new CameraIOSim("Left_Forward", leftFrontCamTransform)),
+                        new Camera("Right_Rear", new CameraIOSim("Right_Rear", rightRearCamTransform)),
+                        new Camera("Left_Rear", new CameraIOSim("Left_Rear", leftRearCamTransform))
+                    })
+                    : new VisionSubsystem(new Camera[]{
+                        new Camera("Right_Forward", new CameraIO() {}),
+                        new Camera("Left_Forward", new CameraIO() {}),
+                        new Camera("Right_Rear", new CameraIO() {}),
+                        new Camera("Left_Rear", new CameraIO() {})
+                    });
+                ModuleIOSim[] simModules = {
+                    new ModuleIOSim(Constants.Swerve.Mod0.constants),
+                    new ModuleIOSim(Constants.Swerve.Mod1.constants),
+                    new ModuleIOSim(Constants.Swerve.Mod2.constants),
+                    new ModuleIOSim(Constants.Swerve.Mod3.constants)
+                };
+                GyroIOSim simGyro = new GyroIOSim(simModules);
+                driveSim = new SwerveDriveSim(simGyro, simModules);
+                s_Swerve = new Swerve(
+                    simGyro,
+                    simModules[0],
+                    simModules[1],
+                    simModules[2],
+                    simModules[3],
+                    s_VisionSubystem
+                );
+                driveSim.start();
+                break;
+
+            default:
+                s_VisionSubystem = new VisionSubsystem(new Camera[]{
+                    new Camera("Right_Forward", new CameraIO() {}),
+                    new Camera("Left_Forward", new CameraIO() {}),
+                    new Camera("Right_Rear", new CameraIO() {}),
+                    new Camera("Left_Rear", new CameraIO() {})
+                });
+                s_Swerve = new Swerve(
+                    new GyroIO() {},
+                    new ModuleIO() {},
+                    new ModuleIO() {},
+                    new ModuleIO() {},
+                    new ModuleIO() {},
+                    s_VisionSubystem
+                );
+                break;
+        }
+
         s_Swerve.setDefaultCommand(
             new TeleopSwerve(
                 s_Swerve, 
@@ -80,6 +160,14 @@ public class RobotContainer {
         configureButtonBindings();
     }
 
+    /** Steps the simulated cameras (all of them at once), call once per loop in SIM */
+    public void simulationPeriodic() {
+        if (driveSim != null) {
+            /* The sim cameras see the field from where the robot actually is, not where odometry thinks it is */
+            CameraIOSim.updateSim(driveSim.getPose());
+        }
+    }
+
     /**
      * Use this method to define your button->command mappings. Buttons can be created by
      * instantiating a {@link GenericHID} or one of its subclasses ({@link
@@ -91,6 +179,17 @@ public class RobotContainer {
         zeroGyro.onTrue(new InstantCommand(() -> s_Swerve.zeroHeading()));
     }
 
+    public Swerve getSwerve() {
+        return s_Swerve;
+    }
+
+    /**
+     * @return The drivetrain physics sim, null unless running in SIM
+     */
+    public SwerveDriveSim getDriveSim() {
+        return driveSim;
+    }
+
     /**
      * Use this to pass the autonomous command to the main {@link Robot} class.
      *
@@ -0,0 +1,83 @@
+package frc.robot;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.RobotController;
+import frc.robot.subsystems.GyroIOSim;
+
+/*
+ * Steps the drivetrain physics at 1kHz on its own notifier, much faster than the robot loop, so
+ * the simulated motor controllers and the odometry thread see smooth values like they would on the
+ * real robot.
+ *
+ * Also keeps the robot's true pose, which is what the simulated cameras look from.
+ */
+public class SwerveDriveSim {
+    private static final double SIM_PERIOD = 0.001;
+
+    private final GyroIOSim gyro;
+    private final ModuleIOSim[] modules;
+    private final SwerveModuleState[] moduleStates;
+    private final Notifier notifier;
+
+    private long lastTimeMicros = 0;
+    /* Written by the notifier, read from the main thread */
+    private volatile Pose2d pose = new Pose2d();
+
+    public SwerveDriveSim(GyroIOSim gyro, ModuleIOSim... modules) {
+        this.gyro = gyro;
+        this.modules = modules;
+        this.moduleStates = new SwerveModuleState[modules.length];
+
+        notifier = new Notifier(this::update);
+        notifier.setName("SwerveDriveSim");
+    }
+
+    public void start() {
+        lastTimeMicros = RobotController.getFPGATime();
+        notifier.startPeriodic(SIM_PERIOD);
+    }
+
+    private void update() {
+        long now = RobotController.getFPGATime();
+        double dt = (now - lastTimeMicros) / 1e6;
+        lastTimeMicros = now;
+        if (dt <= 0.0) {
+            return;
+        }
+
+        for (ModuleIOSim module : modules) {
+            module.simulationPeriodic(dt);
+        }
+        gyro.simulationPeriodic(dt);
+
+        for (int i = 0; i < modules.length; i++) {
+            moduleStates[i] = modules[i].getSimulatedState();
+        }
+        ChassisSpeeds speeds = Constants.Swerve.swerveKinematics.toChassisSpeeds(moduleStates);
+        synchronized (this) {
+            pose = pose.exp(new Twist2d(
+                speeds.vxMetersPerSecond * dt,
+                speeds.vyMetersPerSecond * dt,
+                speeds.omegaRadiansPerSecond * dt
+            ));
+        }
+    }
+
+    /**
+     * @return Where the robot actually is in the sim
+     */
+    public Pose2d getPose() {
+        return pose;
+    }
+
+    /**
+     * Moves the simulated robot, doesn't touch the gyro so its heading keeps integrating from where it was
+     */
+    public synchronized void setPose(Pose2d pose) {
+        this.pose = pose;
+    }
+}
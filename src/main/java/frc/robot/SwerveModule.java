@@ -1,92 +1,197 @@
 package frc.robot;
 
-import com.ctre.phoenix6.controls.DutyCycleOut;
-import com.ctre.phoenix6.controls.PositionVoltage;
-import com.ctre.phoenix6.controls.VelocityVoltage;
-import com.ctre.phoenix6.hardware.CANcoder;
-import com.ctre.phoenix6.hardware.TalonFX;
+import java.util.Arrays;
 
+import org.littletonrobotics.junction.Logger;
+
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.SimpleMotorFeedforward;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.Timer;
 import frc.lib.math.Conversions;
-import frc.lib.util.SwerveModuleConstants;
 
 public class SwerveModule {
     public int moduleNumber;
-    private Rotation2d angleOffset;
 
-    private TalonFX mAngleMotor;
-    private TalonFX mDriveMotor;
-    private CANcoder angleEncoder;
+    private final ModuleIO io;
+    private final ModuleIOInputsAutoLogged inputs = new ModuleIOInputsAutoLogged();
+    private final String inputsKey;
 
     private final SimpleMotorFeedforward driveFeedForward = new SimpleMotorFeedforward(Constants.Swerve.driveKS, Constants.Swerve.driveKV, Constants.Swerve.driveKA);
 
-    /* drive motor control requests */
-    private final DutyCycleOut driveDutyCycle = new DutyCycleOut(0);
-    private final VelocityVoltage driveVelocity = new VelocityVoltage(0);
+    /* Built once per loop from the inputs so getters don't allocate every time they're called */
+    private final SwerveModuleState state = new SwerveModuleState();
+    private final SwerveModulePosition position = new SwerveModulePosition();
+    private Rotation2d cancoder = new Rotation2d();
+    /* Reused every loop, grows if a loop ever has more samples than it's seen before */
+    private SwerveModulePosition[] odometryPositions = new SwerveModulePosition[] {};
 
-    /* angle motor control requests */
-    private final PositionVoltage anglePosition = new PositionVoltage(0);
+    /* Last angle setpoint, for the steer velocity feedforward */
+    private double lastAngleSetpoint = 0.0;
+    private double lastSetpointTimestamp = 0.0;
+    private boolean secondOrderEnabled = true;
 
-    public SwerveModule(int moduleNumber, SwerveModuleConstants moduleConstants){
+    public SwerveModule(int moduleNumber, ModuleIO io){
         this.moduleNumber = moduleNumber;
-        this.angleOffset = moduleConstants.angleOffset;
-        
-        /* Angle Encoder Config */
-        angleEncoder = new CANcoder(moduleConstants.cancoderID);
-        angleEncoder.getConfigurator().apply(Robot.ctreConfigs.swerveCANcoderConfig);
-
-        /* Angle Motor Config */
-        mAngleMotor = new TalonFX(moduleConstants.angleMotorID);
-        mAngleMotor.getConfigurator().apply(Robot.ctreConfigs.swerveAngleFXConfig);
-        resetToAbsolute();
-
-        /* Drive Motor Config */
-        mDriveMotor = new TalonFX(moduleConstants.driveMotorID);
-        mDriveMotor.getConfigurator().apply(Robot.ctreConfigs.swerveDriveFXConfig);
-        mDriveMotor.getConfigurator().setPosition(0.0);
+        this.io = io;
+        this.inputsKey = "Swerve/Module" + moduleNumber;
+    }
+
+    /**
+     * Updates and logs the module inputs. Caller must hold OdometryThread.odometryLock so the odometry
+     * samples line up with the other modules and the gyro.
+     */
+    public void periodic(){
+        io.updateInputs(inputs);
+        Logger.processInputs(inputsKey, inputs);
+
+        Rotation2d angle = Rotation2d.fromRotations(inputs.angleRotations);
+        state.speedMetersPerSecond = Conversions.RPSToMPS(inputs.driveVelocityRPS, Constants.Swerve.wheelCircumference);
+        state.angle = angle;
+        position.distanceMeters = Conversions.rotationsToMeters(inputs.drivePositionRotations, Constants.Swerve.wheelCircumference);
+        position.angle = angle;
+        cancoder = Rotation2d.fromRotations(inputs.cancoderRotations);
+
+        int sampleCount = inputs.odometryTimestamps.length;
+        if (odometryPositions.length < sampleCount) {
+            int oldLength = odometryPositions.length;
+            odometryPositions = Arrays.copyOf(odometryPositions, sampleCount);
+            for (int i = oldLength; i < sampleCount; i++) {
+                odometryPositions[i] = new SwerveModulePosition();
+            }
+        }
+        for (int i = 0; i < sampleCount; i++) {
+            odometryPositions[i].distanceMeters =
+                Conversions.rotationsToMeters(inputs.odometryDrivePositionsRotations[i], Constants.Swerve.wheelCircumference);
+            odometryPositions[i].angle = Rotation2d.fromRotations(inputs.odometryAngleRotations[i]);
+        }
     }
 
     public void setDesiredState(SwerveModuleState desiredState, boolean isOpenLoop){
-        desiredState = SwerveModuleState.optimize(desiredState, getState().angle); 
-        mAngleMotor.setControl(anglePosition.withPosition(desiredState.angle.getRotations()));
-        setSpeed(desiredState, isOpenLoop);
+        setDesiredState(desiredState.speedMetersPerSecond, desiredState.angle.getRadians(), isOpenLoop);
+    }
+
+    /**
+     * Allocation free version of setDesiredState(), does the same thing as SwerveModuleState.optimize.
+     * Drive speed is scaled down by the cosine of how far the module still has to turn, so it doesn't
+     * push the robot sideways while it's pointed the wrong way, and the rate the angle setpoint is
+     * moving at is fed forward to the angle motor.
+     * @param speedMetersPerSecond
+     * @param angleRadians
+     * @param isOpenLoop
+     */
+    public void setDesiredState(double speedMetersPerSecond, double angleRadians, boolean isOpenLoop){
+        double speedScale = steerTo(angleRadians);
+        setSpeed(speedMetersPerSecond * speedScale, isOpenLoop);
+    }
+
+    /**
+     * Same as setDesiredState(), but drives with closed loop torque current (FOC) control instead of voltage
+     * @param forceNewtons Force the wheel should push with along the module's angle, fed forward as current
+     */
+    public void setDesiredStateTorqueCurrent(double speedMetersPerSecond, double angleRadians, double forceNewtons){
+        double speedScale = steerTo(angleRadians);
+
+        /* Wheel force to motor torque to current */
+        double feedforwardAmps = forceNewtons * speedScale * (Constants.Swerve.wheelCircumference / (2.0 * Math.PI))
+            / Constants.Swerve.driveGearRatio / Constants.Swerve.driveMotor.KtNMPerAmp;
+        io.setDriveVelocityTorqueCurrent(
+            Conversions.MPSToRPS(speedMetersPerSecond * speedScale, Constants.Swerve.wheelCircumference),
+            feedforwardAmps
+        );
+    }
+
+    /*
+     * Turns the module to an angle and returns what to multiply the drive speed by: -1 if it's quicker to
+     * drive backwards, times the cosine of how far it still has to turn
+     */
+    private double steerTo(double angleRadians){
+        /* Never turn more than 90 degrees, drive backwards instead */
+        double speedScale = 1.0;
+        double currentAngle = Units.rotationsToRadians(inputs.angleRotations);
+        double delta = MathUtil.angleModulus(angleRadians - currentAngle);
+        if (Math.abs(delta) > Math.PI / 2.0) {
+            speedScale = -1.0;
+            angleRadians += Math.PI;
+            delta = MathUtil.angleModulus(delta + Math.PI);
+        }
+
+        double steerVelocity = 0.0;
+        if (secondOrderEnabled) {
+            speedScale *= Math.cos(delta);
+
+            /* Setpoints a loop apart only, a stale one would make a huge kick. Wrapped to +-90 degrees so flips don't count. */
+            double now = Timer.getFPGATimestamp();
+            double dt = now - lastSetpointTimestamp;
+            if (dt > 0.0 && dt < 2.0 * TimedRobot.kDefaultPeriod) {
+                steerVelocity = MathUtil.angleModulus(2.0 * (angleRadians - lastAngleSetpoint)) / 2.0 / dt;
+            }
+            lastSetpointTimestamp = now;
+        }
+        lastAngleSetpoint = angleRadians;
+
+        io.setAnglePosition(Units.radiansToRotations(angleRadians), Units.radiansToRotations(steerVelocity));
+        return speedScale;
+    }
+
+    /**
+     * Turns cosine compensation and the steer velocity feedforward on or off, for comparing against
+     * plain first order control in simulation
+     */
+    public void setSecondOrderEnabled(boolean enabled){
+        secondOrderEnabled = enabled;
     }
 
-    private void setSpeed(SwerveModuleState desiredState, boolean isOpenLoop){
+    private void setSpeed(double speedMetersPerSecond, boolean isOpenLoop){
         if(isOpenLoop){
-            driveDutyCycle.Output = desiredState.speedMetersPerSecond / Constants.Swerve.maxSpeed;
-            mDriveMotor.setControl(driveDutyCycle);
+            io.setDriveOpenLoop(speedMetersPerSecond / Constants.Swerve.maxSpeed);
         }
         else {
-            driveVelocity.Velocity = Conversions.MPSToRPS(desiredState.speedMetersPerSecond, Constants.Swerve.wheelCircumference);
-            driveVelocity.FeedForward = driveFeedForward.calculate(desiredState.speedMetersPerSecond);
-            mDriveMotor.setControl(driveVelocity);
+            io.setDriveVelocity(
+                Conversions.MPSToRPS(speedMetersPerSecond, Constants.Swerve.wheelCircumference),
+                driveFeedForward.calculate(speedMetersPerSecond)
+            );
         }
     }
 
     public Rotation2d getCANcoder(){
-        return Rotation2d.fromRotations(angleEncoder.getAbsolutePosition().getValueAsDouble());
+        return cancoder;
     }
 
     public void resetToAbsolute(){
-        double absolutePosition = getCANcoder().getRotations() - angleOffset.getRotations();
-        mAngleMotor.setPosition(absolutePosition);
+        io.resetToAbsolute();
     }
 
+    /**
+     * @return The module state from this loop's inputs. Shared instance, don't modify it.
+     */
     public SwerveModuleState getState(){
-        return new SwerveModuleState(
-            Conversions.RPSToMPS(mDriveMotor.getVelocity().getValueAsDouble(), Constants.Swerve.wheelCircumference), 
-            Rotation2d.fromRotations(mAngleMotor.getPosition().getValueAsDouble())
-        );
+        return state;
     }
 
+    /**
+     * @return The module position from this loop's inputs. Shared instance, don't modify it.
+     */
     public SwerveModulePosition getPosition(){
-        return new SwerveModulePosition(
-            Conversions.rotationsToMeters(mDriveMotor.getPosition().getValueAsDouble(), Constants.Swerve.wheelCircumference), 
-            Rotation2d.fromRotations(mAngleMotor.getPosition().getValueAsDouble())
-        );
+        return position;
+    }
+
+    /**
+     * @return Positions sampled by the odometry thread since the last loop, oldest first. Only the first
+     * getOdometryTimestamps().length are from this loop, the array and positions are reused every loop.
+     */
+    public SwerveModulePosition[] getOdometryPositions(){
+        return odometryPositions;
+    }
+
+    /**
+     * @return Timestamps (in seconds) of the odometry samples
+     */
+    public double[] getOdometryTimestamps(){
+        return inputs.odometryTimestamps;
     }
 }
\ No newline at end of file
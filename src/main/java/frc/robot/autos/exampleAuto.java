@@ -18,6 +18,8 @@ import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
 import edu.wpi.first.wpilibj2.command.SwerveControllerCommand;
 
 public class exampleAuto extends SequentialCommandGroup {
+    private final Trajectory trajectory;
+
     public exampleAuto(Swerve s_Swerve){
         TrajectoryConfig config =
             new TrajectoryConfig(
@@ -36,6 +38,8 @@ public class exampleAuto extends SequentialCommandGroup {
                 new Pose2d(3, 0, new Rotation2d(0)),
                 config);
 
+        trajectory = exampleTrajectory;
+
         var thetaController =
             new ProfiledPIDController(
                 Constants.AutoConstants.kPThetaController, 0, 0, Constants.AutoConstants.kThetaControllerConstraints);
@@ -58,4 +62,11 @@ public class exampleAuto extends SequentialCommandGroup {
             swerveControllerCommand
         );
     }
+
+    /**
+     * @return The path this auto follows, what it gets compared against in the sim harness
+     */
+    public Trajectory getTrajectory() {
+        return trajectory;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,73 @@
+package frc.robot.commands;
+
+import frc.lib.util.AllianceTracker;
+import frc.lib.util.TrajectoryCache;
+import frc.lib.util.TrajectorySetpoint;
+import frc.lib.util.UniformTrajectory;
+import frc.robot.subsystems.Swerve;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+
+
+/* Follows a Choreo trajectory from the TrajectoryCache, flipped for red if needed */
+public class FollowTrajectory extends Command {
+    private Swerve s_Swerve;
+    private String trajectoryName;
+    private boolean useTorqueCurrent;
+
+    private final Timer timer = new Timer();
+    private final TrajectorySetpoint setpoint = new TrajectorySetpoint();
+
+    private UniformTrajectory trajectory = null;
+    private boolean isRedAlliance = false;
+
+    /**
+     * @param trajectoryName File name in deploy/choreo, without .traj
+     */
+    public FollowTrajectory(Swerve s_Swerve, String trajectoryName) {
+        this(s_Swerve, trajectoryName, false);
+    }
+
+    /**
+     * @param trajectoryName File name in deploy/choreo, without .traj
+     * @param useTorqueCurrent Drive with torque current control and feed forward the trajectory's module forces
+     */
+    public FollowTrajectory(Swerve s_Swerve, String trajectoryName, boolean useTorqueCurrent) {
+        this.s_Swerve = s_Swerve;
+        this.trajectoryName = trajectoryName;
+        this.useTorqueCurrent = useTorqueCurrent;
+        addRequirements(s_Swerve);
+    }
+
+    @Override
+    public void initialize() {
+        trajectory = TrajectoryCache.getInstance().get(trajectoryName).orElse(null);
+        if (trajectory == null) {
+            DriverStation.reportError("Trajectory " + trajectoryName + " couldn't be loaded", false);
+        }
+        /* Alliance can't change mid auto, only check it once */
+        isRedAlliance = AllianceTracker.isRedAlliance();
+        timer.restart();
+    }
+
+    @Override
+    public void execute() {
+        if (trajectory == null) {
+            return;
+        }
+        trajectory.sample(timer.get(), isRedAlliance, setpoint);
+        s_Swerve.followTrajectory(setpoint, useTorqueCurrent);
+    }
+
+    @Override
+    public boolean isFinished() {
+        return trajectory == null || timer.hasElapsed(trajectory.getTotalTime());
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        s_Swerve.drive(0.0, 0.0, 0.0, false, false);
+    }
+}
@@ -0,0 +1,21 @@
+package frc.robot.subsystems;
+
+import org.littletonrobotics.junction.AutoLog;
+
+/*
+ * Hardware layer for the gyro. The default (empty) implementation is what gets used in replay.
+ */
+public interface GyroIO {
+    @AutoLog
+    public static class GyroIOInputs {
+        public boolean connected = false;
+        public double yawDegrees = 0.0;
+        public double yawVelocityDegPerSec = 0.0;
+
+        /* Samples from the odometry thread since the last loop */
+        public double[] odometryYawTimestamps = new double[] {};
+        public double[] odometryYawDegrees = new double[] {};
+    }
+
+    public default void updateInputs(GyroIOInputs inputs) {}
+}
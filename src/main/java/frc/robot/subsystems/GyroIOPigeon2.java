@@ -0,0 +1,66 @@
+package frc.robot.subsystems;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.StatusSignal;
+import com.ctre.phoenix6.configs.MountPoseConfigs;
+import com.ctre.phoenix6.configs.Pigeon2Configuration;
+import com.ctre.phoenix6.hardware.Pigeon2;
+
+import edu.wpi.first.units.measure.Angle;
+import edu.wpi.first.units.measure.AngularVelocity;
+import frc.lib.util.CANBusMonitor;
+import frc.lib.util.DeviceConfigurator;
+import frc.lib.util.SignalRegistry;
+import frc.robot.Constants;
+
+/* Real gyro, a Pigeon2 on Constants.Swerve.pigeonBus */
+public class GyroIOPigeon2 implements GyroIO {
+    protected final Pigeon2 gyro;
+
+    private final StatusSignal<Angle> yawSignal;
+    private final StatusSignal<AngularVelocity> yawVelocitySignal;
+
+    /* odometry thread samples, drained into reused arrays */
+    private final OdometryThread.SampleQueue timestampQueue;
+    private final OdometryThread.SampleQueue yawQueue;
+    private final double[][] timestampBuffers = new double[OdometryThread.QUEUE_SIZE + 1][];
+    private final double[][] yawBuffers = new double[OdometryThread.QUEUE_SIZE + 1][];
+
+    public GyroIOPigeon2() {
+        gyro = new Pigeon2(Constants.Swerve.pigeonID, Constants.Swerve.pigeonBus);
+        DeviceConfigurator.configure(
+            gyro,
+            new Pigeon2Configuration().withMountPose(new MountPoseConfigs().withMountPoseYaw(180)),
+            () -> gyro.setYaw(0)
+        );
+
+        yawSignal = gyro.getYaw();
+        yawVelocitySignal = gyro.getAngularVelocityZWorld();
+        /* Refreshed by Swerve once per loop together with every other drivetrain signal */
+        SignalRegistry.register(Constants.Swerve.pigeonBus, yawSignal, yawVelocitySignal);
+
+        /* StatusSignals aren't thread safe, so the odometry thread gets its own copy of yaw */
+        timestampQueue = OdometryThread.getInstance().makeTimestampQueue();
+        yawQueue = OdometryThread.getInstance().registerSignal(Constants.Swerve.pigeonBus, yawSignal.clone());
+
+        /* Once the config and setYaw() are done, so they can't race */
+        DeviceConfigurator.afterAll(() -> {
+            yawVelocitySignal.setUpdateFrequency(Constants.Swerve.loopSignalFrequency);
+            gyro.optimizeBusUtilization();
+        });
+
+        CANBusMonitor.track(Constants.Swerve.pigeonBus);
+    }
+
+    @Override
+    public void updateInputs(GyroIOInputs inputs) {
+        /* SignalRegistry.refreshAll() already ran this loop */
+        inputs.connected = BaseStatusSignal.isAllGood(yawSignal, yawVelocitySignal);
+        inputs.yawDegrees = yawSignal.getValueAsDouble();
+        inputs.yawVelocityDegPerSec = yawVelocitySignal.getValueAsDouble();
+
+        /* Caller holds OdometryThread.odometryLock, so both queues are the same length */
+        inputs.odometryYawTimestamps = OdometryThread.drain(timestampQueue, timestampBuffers);
+        inputs.odometryYawDegrees = OdometryThread.drain(yawQueue, yawBuffers);
+    }
+}
@@ -0,0 +1,46 @@
+package frc.robot.subsystems;
+
+import com.ctre.phoenix6.sim.Pigeon2SimState;
+
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.RobotController;
+import frc.robot.Constants;
+import frc.robot.ModuleIOSim;
+
+/*
+ * Simulated gyro. Runs the real Pigeon2 code against Phoenix's simulated device, with the yaw
+ * integrated from what the simulated modules are doing.
+ *
+ * simulationPeriodic() is called by SwerveDriveSim's high rate notifier, not the main loop.
+ */
+public class GyroIOSim extends GyroIOPigeon2 {
+    private final ModuleIOSim[] modules;
+    private final SwerveModuleState[] moduleStates;
+    private final Pigeon2SimState simState;
+
+    private double yawDegrees = 0.0;
+
+    public GyroIOSim(ModuleIOSim... modules) {
+        this.modules = modules;
+        this.moduleStates = new SwerveModuleState[modules.length];
+        this.simState = gyro.getSimState();
+    }
+
+    /**
+     * Integrates the chassis yaw rate into the simulated Pigeon2
+     * @param dtSeconds Time since the last step
+     */
+    public void simulationPeriodic(double dtSeconds) {
+        for (int i = 0; i < modules.length; i++) {
+            moduleStates[i] = modules[i].getSimulatedState();
+        }
+        double yawVelocity = Units.radiansToDegrees(
+            Constants.Swerve.swerveKinematics.toChassisSpeeds(moduleStates).omegaRadiansPerSecond);
+        yawDegrees += yawVelocity * dtSeconds;
+
+        simState.setSupplyVoltage(RobotController.getBatteryVoltage());
+        simState.setRawYaw(yawDegrees);
+        simState.setAngularVelocityZ(yawVelocity);
+    }
+}
@@ -0,0 +1,268 @@
+package frc.robot.subsystems;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.CANBus;
+import com.ctre.phoenix6.StatusSignal;
+import com.ctre.phoenix6.Timestamp;
+
+import edu.wpi.first.hal.NotifierJNI;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.RobotController;
+import frc.robot.Constants;
+
+/*
+ * Samples the drivetrain odometry signals faster than the 20ms main loop.
+ *
+ * On a CANivore every registered signal is waited on together (waitForAll), so each sample is
+ * a synchronized snapshot of all modules and the gyro. On the rio bus waitForAll can't line the
+ * frames up, so the thread falls back to waiting on a HAL notifier and refreshing each bus's signals
+ * together (a batched refresh only works within one bus). The notifier runs on FPGA time, so it also
+ * follows simulated time when the sim is stepped.
+ *
+ * Each sample is stamped with when its CAN frames were captured (from the signals' own timestamps),
+ * so it lines up with vision measurements, which carry their capture time too.
+ *
+ * Samples are queued in primitive arrays and replayed into the pose estimator by Swerve.periodic().
+ */
+public class OdometryThread extends Thread {
+    /* Held while a sample is being queued and while Swerve is replaying queued samples */
+    public static final Lock odometryLock = new ReentrantLock();
+
+    /* Enough room for ~5 main loops at 250Hz before samples start getting dropped */
+    public static final int QUEUE_SIZE = 64;
+
+    private static OdometryThread instance = null;
+
+    private final Lock signalsLock = new ReentrantLock();
+    private BaseStatusSignal[] signals = new BaseStatusSignal[0];
+    /* Same signals split up by bus, for the notifier fallback's refresh */
+    private final List<String> busNames = new ArrayList<>();
+    private BaseStatusSignal[][] signalsByBus = new BaseStatusSignal[0][];
+    private final List<SampleQueue> queues = new ArrayList<>();
+    private final List<SampleQueue> timestampQueues = new ArrayList<>();
+
+    private final double frequency;
+    private final boolean useWaitForAll;
+
+    /* How far sample timestamps were moved back from the read time, since the last drainLatencyStats(). Guarded by odometryLock. */
+    private double latencyStatsSum = 0.0;
+    private double latencyStatsMax = 0.0;
+    private double spreadStatsMax = 0.0;
+    private int latencyStatsCount = 0;
+
+    public static OdometryThread getInstance() {
+        if (instance == null) {
+            instance = new OdometryThread(Constants.Swerve.odometryFrequency, Constants.Swerve.odometryOnCANivore);
+        }
+        return instance;
+    }
+
+    private OdometryThread(double frequency, boolean useWaitForAll) {
+        this.frequency = frequency;
+        this.useWaitForAll = useWaitForAll;
+
+        setName("OdometryThread");
+        setDaemon(true);
+    }
+
+    /**
+     * Registers a signal to be sampled by the thread. Must be called before the thread is started.
+     * @param bus Bus the signal's device is on
+     * @param signal Signal to sample, its update frequency is raised to the odometry frequency
+     * @return Queue the sampled values are pushed to, only read while holding odometryLock
+     */
+    public SampleQueue registerSignal(CANBus bus, StatusSignal<?> signal) {
+        SampleQueue queue = new SampleQueue();
+        signalsLock.lock();
+        try {
+            signal.setUpdateFrequency(frequency);
+
+            signals = append(signals, signal);
+            queues.add(queue);
+
+            int index = busNames.indexOf(bus.getName());
+            if (index < 0) {
+                busNames.add(bus.getName());
+                BaseStatusSignal[][] newSignalsByBus = new BaseStatusSignal[signalsByBus.length + 1][];
+                System.arraycopy(signalsByBus, 0, newSignalsByBus, 0, signalsByBus.length);
+                newSignalsByBus[signalsByBus.length] = new BaseStatusSignal[0];
+                signalsByBus = newSignalsByBus;
+                index = signalsByBus.length - 1;
+            }
+            signalsByBus[index] = append(signalsByBus[index], signal);
+        } finally {
+            signalsLock.unlock();
+        }
+        return queue;
+    }
+
+    /**
+     * @return Queue of FPGA timestamps (in seconds), one per sample, only read while holding odometryLock
+     */
+    public SampleQueue makeTimestampQueue() {
+        SampleQueue queue = new SampleQueue();
+        signalsLock.lock();
+        try {
+            timestampQueues.add(queue);
+        } finally {
+            signalsLock.unlock();
+        }
+        return queue;
+    }
+
+    private static BaseStatusSignal[] append(BaseStatusSignal[] signals, BaseStatusSignal signal) {
+        BaseStatusSignal[] newSignals = new BaseStatusSignal[signals.length + 1];
+        System.arraycopy(signals, 0, newSignals, 0, signals.length);
+        newSignals[signals.length] = signal;
+        return newSignals;
+    }
+
+    /**
+     * Empties a sample queue into an array of exactly its length. Only call while holding odometryLock.
+     * @param buffers One slot per queue length, QUEUE_SIZE + 1 long. The array for a length is made the first time
+     * that length comes up and reused after that, so once the lengths have been seen this doesn't allocate.
+     * @return One of buffers, only good until the next drain with the same buffers
+     */
+    public static double[] drain(SampleQueue queue, double[][] buffers) {
+        int count = queue.size;
+        double[] values = buffers[count];
+        if (values == null) {
+            values = new double[count];
+            buffers[count] = values;
+        }
+        System.arraycopy(queue.values, 0, values, 0, count);
+        queue.size = 0;
+        return values;
+    }
+
+    /**
+     * Gets the capture latency of the samples taken since the last call, then starts over. Only call while holding odometryLock.
+     * @param out Filled with the mean and max time between capture and read, and the max spread in capture time
+     * between signals in one sample, all in milliseconds. The mean and max are how far off the samples would be if
+     * they were stamped when they were read.
+     */
+    public void drainLatencyStats(double[] out) {
+        out[0] = latencyStatsCount > 0 ? latencyStatsSum / latencyStatsCount * 1000.0 : 0.0;
+        out[1] = latencyStatsMax * 1000.0;
+        out[2] = spreadStatsMax * 1000.0;
+        latencyStatsSum = 0.0;
+        latencyStatsMax = 0.0;
+        spreadStatsMax = 0.0;
+        latencyStatsCount = 0;
+    }
+
+    /* Safe to call more than once, every Swerve that gets built (one per test class in the unit tests) calls this */
+    @Override
+    public synchronized void start() {
+        if (signals.length > 0 && getState() == State.NEW) {
+            super.start();
+        }
+    }
+
+    @Override
+    public void run() {
+        long periodMicros = (long) (1e6 / frequency);
+        boolean compensateLatency = RobotBase.isReal();
+        double lastTimestamp = 0.0;
+        int notifier = 0;
+        long nextSampleMicros = 0;
+        if (!useWaitForAll) {
+            notifier = NotifierJNI.initializeNotifier();
+            NotifierJNI.setNotifierName(notifier, "OdometryThread");
+            nextSampleMicros = RobotController.getFPGATime();
+        }
+
+        while (true) {
+            if (!useWaitForAll) {
+                /* Don't try to catch up on missed samples, just start again from now */
+                nextSampleMicros = Math.max(nextSampleMicros + periodMicros, RobotController.getFPGATime());
+                NotifierJNI.updateNotifierAlarm(notifier, nextSampleMicros);
+                if (NotifierJNI.waitForNotifierAlarm(notifier) == 0) {
+                    return;
+                }
+            }
+
+            signalsLock.lock();
+            try {
+                if (useWaitForAll) {
+                    /* Times out after two periods so a missing device can't stall odometry */
+                    BaseStatusSignal.waitForAll(2.0 / frequency, signals);
+                } else {
+                    for (BaseStatusSignal[] busSignals : signalsByBus) {
+                        BaseStatusSignal.refreshAll(busSignals);
+                    }
+                }
+            } finally {
+                signalsLock.unlock();
+            }
+
+            /*
+             * Stamp the sample with when the frames were captured, not when they were read here. Each signal knows
+             * how old its frame is (device or CANivore timestamp), the FPGA clock just gets wound back by that much.
+             */
+            double now = RobotController.getFPGATime() / 1e6;
+            double latencySum = 0.0;
+            double minLatency = Double.POSITIVE_INFINITY;
+            double maxLatency = Double.NEGATIVE_INFINITY;
+            int validCount = 0;
+            for (BaseStatusSignal signal : signals) {
+                Timestamp signalTimestamp = signal.getTimestamp();
+                if (signalTimestamp.isValid()) {
+                    double latency = signalTimestamp.getLatency();
+                    latencySum += latency;
+                    minLatency = Math.min(minLatency, latency);
+                    maxLatency = Math.max(maxLatency, latency);
+                    validCount++;
+                }
+            }
+            double latency = validCount > 0 ? latencySum / validCount : 0.0;
+            /* Sim frames are timestamped on the wall clock, which doesn't line up with a stepped FPGA clock */
+            double timestamp = compensateLatency ? now - latency : now;
+            /* Frames can arrive out of order between samples, keep the timestamps increasing */
+            timestamp = Math.max(timestamp, lastTimestamp + 1e-6);
+            lastTimestamp = timestamp;
+
+            odometryLock.lock();
+            try {
+                latencyStatsSum += latency;
+                latencyStatsMax = Math.max(latencyStatsMax, latency);
+                if (validCount > 0) {
+                    spreadStatsMax = Math.max(spreadStatsMax, maxLatency - minLatency);
+                }
+                latencyStatsCount++;
+
+                for (int i = 0; i < signals.length; i++) {
+                    queues.get(i).offer(signals[i].getValueAsDouble());
+                }
+                for (SampleQueue timestampQueue : timestampQueues) {
+                    timestampQueue.offer(timestamp);
+                }
+            } finally {
+                odometryLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Fixed size buffer of samples, so queueing a sample doesn't box a Double. It's always drained whole, so
+     * samples just fill it from the front. Not thread safe on its own, it's only touched while holding odometryLock.
+     */
+    public static final class SampleQueue {
+        private final double[] values = new double[QUEUE_SIZE];
+        private int size = 0;
+
+        private SampleQueue() {}
+
+        /* Drops the new sample when full, the main loop has fallen behind and will catch up from what's queued */
+        private void offer(double value) {
+            if (size < QUEUE_SIZE) {
+                values[size++] = value;
+            }
+        }
+    }
+}
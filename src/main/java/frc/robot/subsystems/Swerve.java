@@ -1,26 +1,33 @@
 package frc.robot.subsystems;
 
+import frc.robot.ModuleIO;
 import frc.robot.SwerveModule;
-import frc.lib.util.FlippingUtil;
+import frc.lib.util.AllianceTracker;
+import frc.lib.util.DeviceConfigurator;
+import frc.lib.util.LoopProfiler;
+import frc.lib.util.PoseHistory;
+import frc.lib.util.SignalRegistry;
+import frc.lib.util.SwerveEKFPoseEstimator;
+import frc.lib.util.SwervePoseEstimator;
+import frc.lib.util.SwerveSetpointGenerator;
+import frc.lib.util.Telemetry;
+import frc.lib.util.TrajectorySetpoint;
+import frc.lib.util.Telemetry.Rate;
+import frc.lib.util.WPILibSwervePoseEstimator;
 import frc.robot.Constants;
-import frc.robot.FieldLayout;
+import frc.robot.Constants.Swerve.PoseEstimatorType;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
-import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.math.kinematics.SwerveDriveOdometry;
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.VecBuilder;
 import edu.wpi.first.math.controller.PIDController;
-import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 
-import java.lang.annotation.Target;
-import java.util.function.Consumer;
+import java.util.List;
 
 import org.littletonrobotics.junction.Logger;
 
-import com.ctre.phoenix6.configs.MountPoseConfigs;
-import com.ctre.phoenix6.configs.Pigeon2Configuration;
-import com.ctre.phoenix6.hardware.Pigeon2;
-
 import choreo.trajectory.SwerveSample;
 import frc.robot.subsystems.Vision.VisionSubsystem;
 import frc.robot.subsystems.Vision.VisionSubsystem.PoseAndTimestampAndDev;
@@ -30,83 +37,230 @@ import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 
-import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.StructArrayPublisher;
+import edu.wpi.first.networktables.StructPublisher;
+import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj.Timer;
-import edu.wpi.first.wpilibj.DriverStation.Alliance;
-import edu.wpi.first.wpilibj.shuffleboard.Shuffleboard;
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
-import edu.wpi.first.wpilibj2.command.Command;
-import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 
 public class Swerve extends SubsystemBase {
-    public SwerveDrivePoseEstimator m_SwervePoseEstimator;
+    public SwervePoseEstimator m_SwervePoseEstimator;
+    /* The other estimator, fed the same inputs so the two can be compared, null unless Constants.Swerve.comparePoseEstimators */
+    private SwervePoseEstimator comparisonEstimator = null;
     public SwerveModule[] mSwerveMods;
-    public Pigeon2 gyro;
+
+    private final GyroIO gyroIO;
+    private final GyroIOInputsAutoLogged gyroInputs = new GyroIOInputsAutoLogged();
+    private Rotation2d gyroYaw = new Rotation2d();
 
     private VisionSubsystem vision;
 
+    private final SwerveModulePosition[] odometryPositions = new SwerveModulePosition[4];
+
     private final PIDController xController = new PIDController(5, 0.0, 0.0);
     private final PIDController yController = new PIDController(5, 0.0, 0.0);
     private final PIDController headingController = new PIDController(5, 0.0, 0.0);
 
-    public Swerve(VisionSubsystem vision) {
+    /* drive() buffers, reused so the drive loop doesn't allocate */
+    private final double[] moduleSpeeds = new double[4];
+    private final double[] moduleAngles = new double[4];
+    private final ChassisSpeeds trajectorySpeeds = new ChassisSpeeds();
+    private final double[] trajectorySetpoint = new double[3];
+    private boolean lastFieldRelative = true;
+
+    private final SwerveSetpointGenerator setpointGenerator = new SwerveSetpointGenerator(
+        Constants.Swerve.moduleTranslations,
+        Constants.Swerve.maxSpeed,
+        Constants.Swerve.maxDriveAcceleration,
+        Constants.Swerve.driveStallAcceleration,
+        Constants.Swerve.driveFreeSpeed,
+        Constants.Swerve.maxSteerVelocity
+    );
+    private static final double SETPOINT_STALE_SECONDS = 0.1;
+    private double lastDriveTimestamp = 0.0;
+    private final double[] measuredAngles = new double[4];
+    private boolean secondOrderEnabled = true;
+
+    /* Trajectory module forces in the robot frame, and the part of each along its wheel, newtons */
+    private static final String FORCE_FEEDFORWARD_KEY = "Swerve/ModuleForceFeedforwardNewtons";
+    private final double[] robotForcesX = new double[4];
+    private final double[] robotForcesY = new double[4];
+    private final double[] moduleForceFeedforward = new double[4];
+
+    /* Measured robot relative velocity, wheels for translation and the gyro for rotation. Updated in periodic() */
+    private double robotVx = 0.0;
+    private double robotVy = 0.0;
+    private double robotOmega = 0.0;
+    /* Same velocity in field coordinates */
+    private double fieldVx = 0.0;
+    private double fieldVy = 0.0;
+    private double fieldOmega = 0.0;
+    /* How old the pose estimate is by the time periodic() finishes with it */
+    private double poseLatencySeconds = 0.0;
+
+    /* Telemetry, keys and publishers are made once here instead of every loop */
+    private static final String POSE_KEY = "Robot Pose2d";
+    private static final String GYRO_KEY = "Gyro angle";
+    private static final String MODULE_STATES_KEY = "Swerve/ModuleStates";
+    private static final String TELEMETRY_TIME_KEY = "Swerve/TelemetryMicros";
+    private static final String ODOMETRY_LATENCY_MEAN_KEY = "Swerve/Odometry/CaptureLatencyMeanMs";
+    private static final String ODOMETRY_LATENCY_MAX_KEY = "Swerve/Odometry/CaptureLatencyMaxMs";
+    private static final String ODOMETRY_SPREAD_KEY = "Swerve/Odometry/SignalSpreadMaxMs";
+    private final double[] odometryLatencyStats = new double[3];
+
+    /* Estimated pose at every odometry sample */
+    private static final double POSE_HISTORY_SECONDS = 2.0;
+    private final PoseHistory poseHistory =
+        new PoseHistory((int) Math.ceil(POSE_HISTORY_SECONDS * Constants.Swerve.odometryFrequency));
+    /* Wheels and gyro only, never corrected by vision, so vision can be checked against how the robot actually moved */
+    private final SwerveDriveOdometry odometry;
+    private final PoseHistory odometryHistory =
+        new PoseHistory((int) Math.ceil(POSE_HISTORY_SECONDS * Constants.Swerve.odometryFrequency));
+
+    private final StructPublisher<Pose2d> posePublisher = Telemetry.structPublisher("Swerve Pose Estimation", Pose2d.struct);
+    private final StructArrayPublisher<SwerveModuleState> moduleStatesPublisher =
+        Telemetry.structArrayPublisher("Swerve Module States", SwerveModuleState.struct);
+    private final DoublePublisher gyroPublisher = Telemetry.doublePublisher("Gyro angle");
+    private final DoubleArrayPublisher cancoderPublisher = Telemetry.doubleArrayPublisher("Swerve CANcoders");
+
+    private final LoopProfiler.Stage periodicStage = LoopProfiler.stage("Swerve");
+    private final LoopProfiler.Stage visionStage = LoopProfiler.stage("SwerveVision");
+    private static final String VISION_MEASUREMENT_COUNT_KEY = "Swerve/VisionMeasurementsApplied";
+
+    private static final String COMPARISON_KEY = "Swerve/EstimatorComparison/";
+    private static final String COMPARISON_POSE_KEY = COMPARISON_KEY + "Pose";
+    private static final String COMPARISON_DIFFERENCE_KEY = COMPARISON_KEY + "DifferenceMeters";
+    private static final String COMPARISON_HEADING_DIFFERENCE_KEY = COMPARISON_KEY + "HeadingDifferenceDegrees";
+    private static final String PRIMARY_MICROS_KEY = COMPARISON_KEY + "PrimaryMicros";
+    private static final String COMPARISON_MICROS_KEY = COMPARISON_KEY + "ComparisonMicros";
+
+    private final SwerveModuleState[] telemetryModuleStates = new SwerveModuleState[4];
+    private final double[] cancoderDegrees = new double[4];
+
+    public Swerve(GyroIO gyroIO, ModuleIO flModuleIO, ModuleIO frModuleIO, ModuleIO blModuleIO, ModuleIO brModuleIO, VisionSubsystem vision) {
+        this.gyroIO = gyroIO;
         this.vision = vision;
-        
-        gyro = new Pigeon2(Constants.Swerve.pigeonID, "Drivetrain");
-        gyro.getConfigurator().apply(new Pigeon2Configuration().withMountPose(new MountPoseConfigs().withMountPoseYaw(180)));
-        gyro.setYaw(0);
-        
-        Timer.delay(1);
 
         mSwerveMods = new SwerveModule[] {
-            new SwerveModule(0, Constants.Swerve.Mod0.constants),
-            new SwerveModule(1, Constants.Swerve.Mod1.constants),
-            new SwerveModule(2, Constants.Swerve.Mod2.constants),
-            new SwerveModule(3, Constants.Swerve.Mod3.constants)
+            new SwerveModule(0, flModuleIO),
+            new SwerveModule(1, frModuleIO),
+            new SwerveModule(2, blModuleIO),
+            new SwerveModule(3, brModuleIO)
         };
 
-        m_SwervePoseEstimator =
-            new SwerveDrivePoseEstimator(
-                Constants.Swerve.swerveKinematics,
-                getGyroYaw(),
-                getModulePositions(),
-                new Pose2d(),
-                VecBuilder.fill(0.1, 0.1, 0.1),
-                VecBuilder.fill(0.45, 0.45, 6)
-            );
+        m_SwervePoseEstimator = makePoseEstimator(Constants.Swerve.poseEstimator);
+        if (Constants.Swerve.comparePoseEstimators) {
+            comparisonEstimator = makePoseEstimator(
+                Constants.Swerve.poseEstimator == PoseEstimatorType.EKF ? PoseEstimatorType.WPILIB : PoseEstimatorType.EKF);
+        }
+        
+        odometry = new SwerveDriveOdometry(Constants.Swerve.swerveKinematics, getGyroYaw(), getModulePositions());
         
         headingController.enableContinuousInput(-Math.PI, Math.PI);
 
+        /* Vision gates its measurements against where we were and how we moved when each frame was captured */
+        vision.setPoseLookups(this::getPoseAt, this::getOdometryPoseAt);
 
+        /* The IOs started configuring their devices in parallel, everything has to be done before reading the CANcoders */
+        DeviceConfigurator.awaitAll();
         resetModulesToAbsolute();
+
+        OdometryThread.getInstance().start();
     }
 
     public void drive(Translation2d translation, double rotation, boolean fieldRelative, boolean isOpenLoop) {
+        drive(translation.getX(), translation.getY(), rotation, fieldRelative, isOpenLoop);
+    }
+
+    /*
+     * Allocation free version of drive(), this is what runs every loop in teleop and auto.
+     * Does the same math as ChassisSpeeds.fromFieldRelativeSpeeds, then the setpoint generator turns the
+     * speeds into module setpoints the modules can actually reach this loop.
+     */
+    public void drive(double vxMetersPerSecond, double vyMetersPerSecond, double omegaRadiansPerSecond, boolean fieldRelative, boolean isOpenLoop) {
+        double vx = vxMetersPerSecond;
+        double vy = vyMetersPerSecond;
+
+        if (fieldRelative) {
+            /* Driver's forward is the other way on red */
+            Rotation2d heading = getHeading();
+            boolean isRedAlliance = AllianceTracker.isRedAlliance();
+            double cos = isRedAlliance ? -heading.getCos() : heading.getCos();
+            double sin = isRedAlliance ? -heading.getSin() : heading.getSin();
+
+            vx = vxMetersPerSecond * cos + vyMetersPerSecond * sin;
+            vy = -vxMetersPerSecond * sin + vyMetersPerSecond * cos;
+        }
+
+        lastFieldRelative = fieldRelative;
+        driveRobotSpeeds(vx, vy, omegaRadiansPerSecond, isOpenLoop, false);
+    }
+
+    /*
+     * Robot relative speeds to the modules
+     * @param useTorqueCurrent Closed loop torque current drive, feeding forward robotForcesX/Y. isOpenLoop is ignored.
+     */
+    private void driveRobotSpeeds(double vx, double vy, double omegaRadiansPerSecond, boolean isOpenLoop, boolean useTorqueCurrent) {
+        if (secondOrderEnabled) {
+            /*
+             * Same as ChassisSpeeds.discretize. The modules hold this loop's setpoint for the whole loop while the
+             * robot turns, so ask for the twist that actually ends up where these speeds would, instead of skewing
+             * toward the direction of rotation.
+             */
+            double halfDtheta = omegaRadiansPerSecond * TimedRobot.kDefaultPeriod / 2.0;
+            double cosMinusOne = Math.cos(2.0 * halfDtheta) - 1.0;
+            double halfThetaByTanOfHalfDtheta = Math.abs(cosMinusOne) < 1e-9
+                ? 1.0 - (4.0 * halfDtheta * halfDtheta) / 12.0
+                : -(halfDtheta * Math.sin(2.0 * halfDtheta)) / cosMinusOne;
+
+            double discreteVx = vx * halfThetaByTanOfHalfDtheta + vy * halfDtheta;
+            double discreteVy = vy * halfThetaByTanOfHalfDtheta - vx * halfDtheta;
+            vx = discreteVx;
+            vy = discreteVy;
+        }
+
+        /* The generator was sitting idle (disabled, or something else was driving), pick up from what the modules are doing */
+        double now = Timer.getFPGATimestamp();
+        if (now - lastDriveTimestamp > SETPOINT_STALE_SECONDS) {
+            for (int i = 0; i < measuredAngles.length; i++) {
+                measuredAngles[i] = mSwerveMods[i].getState().angle.getRadians();
+            }
+            setpointGenerator.reset(robotVx, robotVy, robotOmega, measuredAngles);
+        }
+        lastDriveTimestamp = now;
+
+        setpointGenerator.generate(vx, vy, omegaRadiansPerSecond, TimedRobot.kDefaultPeriod, moduleSpeeds, moduleAngles);
+
+        if (useTorqueCurrent) {
+            /* Only the part of each module's force along the way the wheel is pointing can be fed forward */
+            for (int i = 0; i < moduleForceFeedforward.length; i++) {
+                moduleForceFeedforward[i] = robotForcesX[i] * Math.cos(moduleAngles[i]) + robotForcesY[i] * Math.sin(moduleAngles[i]);
+            }
+            Logger.recordOutput(FORCE_FEEDFORWARD_KEY, moduleForceFeedforward);
+        }
 
-        Rotation2d inverse = DriverStation.getAlliance().get() == Alliance.Red ?  new Rotation2d(Math.PI): new Rotation2d();
-        SwerveModuleState[] swerveModuleStates =
-            Constants.Swerve.swerveKinematics.toSwerveModuleStates(
-                fieldRelative ? ChassisSpeeds.fromFieldRelativeSpeeds(
-                                    translation.getX() , 
-                                    translation.getY(), 
-                                    rotation, 
-                                    getHeading().rotateBy(inverse)
-                                )
-                                : new ChassisSpeeds(
-                                    translation.getX(), 
-                                    translation.getY(), 
-                                    rotation)
-                                );
-        SwerveDriveKinematics.desaturateWheelSpeeds(swerveModuleStates, Constants.Swerve.maxSpeed);
-
-        Logger.recordOutput("Field Relative?", fieldRelative);
-        
         for(SwerveModule mod : mSwerveMods){
-            mod.setDesiredState(swerveModuleStates[mod.moduleNumber], isOpenLoop);
+            if (useTorqueCurrent) {
+                mod.setDesiredStateTorqueCurrent(moduleSpeeds[mod.moduleNumber], moduleAngles[mod.moduleNumber], moduleForceFeedforward[mod.moduleNumber]);
+            } else {
+                mod.setDesiredState(moduleSpeeds[mod.moduleNumber], moduleAngles[mod.moduleNumber], isOpenLoop);
+            }
         }
     }    
 
+    /**
+     * Turns chassis speed discretization and the modules' cosine compensation and steer feedforward on or off,
+     * for measuring the difference in simulation
+     */
+    public void setSecondOrderEnabled(boolean enabled) {
+        secondOrderEnabled = enabled;
+        for (SwerveModule mod : mSwerveMods) {
+            mod.setSecondOrderEnabled(enabled);
+        }
+    }
+
     //modifies controls such that moving the joystick left and right makes the robot orbit a fixed point (field relative), 
     //up and down increase/decrease radius of orbit, and heading is always towards element.
 
@@ -119,52 +273,148 @@ public class Swerve extends SubsystemBase {
         double xVelocity = xController.calculate(pose.getX(), circleTargetX);
         double yVelocity = yController.calculate(pose.getY(), circleTargetY);
 
-        double angleToCenter = Math.atan2(circleCenterY - pose.getY(), circleCenterX - pose.getX());
-        double rotationVelocity = headingController.calculate(pose.getRotation().getRadians(), angleToCenter);
-
-        drive(new Translation2d(xVelocity, yVelocity), rotationVelocity, true, false);
+        /* PID output is in blue origin field coordinates, so it skips drive()'s red alliance flip */
+        driveFieldSpeeds(pose, xVelocity, yVelocity, aimAt(pose, circleCenterX, circleCenterY), false);
     }
 
     // heading of swerve will automatically orient itself such that it's aligned with any point (field relative coordinates)
     public void LockedHeadingDrive(Translation2d translation, double angleRadians, double circleCenterX, double circleCenterY) {
         Pose2d pose = getPose();
 
-        double angleToCenter = Math.atan2(circleCenterY - pose.getY(), circleCenterX - pose.getX());
-        double rotationVelocity = headingController.calculate(pose.getRotation().getRadians(), angleToCenter);
+        drive(translation.getX(), translation.getY(), aimAt(pose, circleCenterX, circleCenterY), true, false);
+    }
+
+    /*
+     * Heading rate to keep the front of the robot pointed at a field point while translating.
+     *
+     * The pose estimate is already poseLatencySeconds old, and whatever we command now takes
+     * aimActuationLatency to happen, so the robot is projected forward by both using the measured
+     * velocity and the PID aims from there. The rate the angle to the target changes at from
+     * that velocity is fed forward so the PID only has to clean up what's left.
+     */
+    private double aimAt(Pose2d pose, double targetX, double targetY) {
+        double lookahead = poseLatencySeconds + Constants.Swerve.aimActuationLatency;
+        double projectedX = pose.getX() + fieldVx * lookahead;
+        double projectedY = pose.getY() + fieldVy * lookahead;
+        double projectedHeading = MathUtil.angleModulus(pose.getRotation().getRadians() + fieldOmega * lookahead);
+
+        double dx = targetX - projectedX;
+        double dy = targetY - projectedY;
+        double distanceSquared = dx * dx + dy * dy;
+        double targetHeading = Math.atan2(dy, dx);
+
+        /* d/dt atan2(dy, dx) with the target still and the robot moving at (vx, vy) */
+        double feedforward = distanceSquared > 1e-6 ? (dy * fieldVx - dx * fieldVy) / distanceSquared : 0.0;
+        double rotationVelocity = feedforward + headingController.calculate(projectedHeading, targetHeading);
+
+        double currentHeadingToTarget = Math.atan2(targetY - pose.getY(), targetX - pose.getX());
+        Logger.recordOutput("Swerve/Aim/TrackingErrorRadians", MathUtil.angleModulus(currentHeadingToTarget - pose.getRotation().getRadians()));
+        Logger.recordOutput("Swerve/Aim/TargetHeadingRadians", targetHeading);
+        Logger.recordOutput("Swerve/Aim/FeedforwardRadPerSec", feedforward);
+        Logger.recordOutput("Swerve/Aim/LookaheadSeconds", lookahead);
+
+        return rotationVelocity;
+    }
+
+    /* Drives with speeds in blue origin field coordinates, no matter which alliance we're on */
+    private void driveFieldSpeeds(Pose2d pose, double vx, double vy, double omega, boolean useTorqueCurrent) {
+        double cos = pose.getRotation().getCos();
+        double sin = pose.getRotation().getSin();
+
+        lastFieldRelative = false;
+        driveRobotSpeeds(vx * cos + vy * sin, -vx * sin + vy * cos, omega, false, useTorqueCurrent);
+    }
+
+
 
-        drive(translation, rotationVelocity, true, false);
+    public void followTrajectory(SwerveSample sample) {
+        followTrajectory(sample, false);
     }
 
+    /**
+     * @param useTorqueCurrent Drive the modules with torque current control, feeding forward the sample's module forces
+     */
+    public void followTrajectory(SwerveSample sample, boolean useTorqueCurrent) {
+        Logger.recordOutput("Swerve Trajectory Sample", sample);
+        followTrajectory(
+            sample.x, sample.y, sample.heading, sample.vx, sample.vy, sample.omega,
+            sample.ax, sample.ay, sample.alpha, sample.moduleForcesX(), sample.moduleForcesY(),
+            useTorqueCurrent
+        );
+    }
 
+    public void followTrajectory(TrajectorySetpoint setpoint) {
+        followTrajectory(setpoint, false);
+    }
 
-    private void follow(ChassisSpeeds speeds) {
-        drive(
-            new Translation2d(speeds.vxMetersPerSecond, speeds.vyMetersPerSecond),
-            speeds.omegaRadiansPerSecond,
-            true,
-            false
+    /**
+     * Allocation free version for trajectories sampled out of the TrajectoryCache
+     * @param useTorqueCurrent Drive the modules with torque current control, feeding forward the setpoint's module forces
+     */
+    public void followTrajectory(TrajectorySetpoint setpoint, boolean useTorqueCurrent) {
+        trajectorySetpoint[0] = setpoint.x;
+        trajectorySetpoint[1] = setpoint.y;
+        trajectorySetpoint[2] = setpoint.heading;
+        Logger.recordOutput("Swerve Trajectory Setpoint", trajectorySetpoint);
+        followTrajectory(
+            setpoint.x, setpoint.y, setpoint.heading, setpoint.vx, setpoint.vy, setpoint.omega,
+            setpoint.ax, setpoint.ay, setpoint.alpha, setpoint.moduleForcesX, setpoint.moduleForcesY,
+            useTorqueCurrent
         );
     }
 
-     public void followTrajectory(SwerveSample sample) {
+    private void followTrajectory(double x, double y, double heading, double vx, double vy, double omega,
+            double ax, double ay, double alpha, double[] forcesX, double[] forcesY, boolean useTorqueCurrent) {
         // Get the current pose of the robot
         Pose2d pose = getPose();
 
         // Generate the next speeds for the robot
-        ChassisSpeeds speeds = new ChassisSpeeds(
-            sample.vx + xController.calculate(pose.getX(), sample.x),
-            sample.vy + yController.calculate(pose.getY(), sample.y),
-            sample.omega + headingController.calculate(pose.getRotation().getRadians(), sample.heading)
-        );
+        trajectorySpeeds.vxMetersPerSecond = vx + xController.calculate(pose.getX(), x);
+        trajectorySpeeds.vyMetersPerSecond = vy + yController.calculate(pose.getY(), y);
+        trajectorySpeeds.omegaRadiansPerSecond = omega + headingController.calculate(pose.getRotation().getRadians(), heading);
 
-        Logger.recordOutput("Swerve Trajectory Sample", sample);
-        // Apply the generated speeds
-        follow(speeds);
+        // Apply the generated speeds, red trajectories come pre flipped so these are already blue origin field speeds
+        if (useTorqueCurrent) {
+            updateRobotForces(pose, omega, ax, ay, alpha, forcesX, forcesY);
+        }
+        driveFieldSpeeds(pose, trajectorySpeeds.vxMetersPerSecond, trajectorySpeeds.vyMetersPerSecond, trajectorySpeeds.omegaRadiansPerSecond, useTorqueCurrent);
 
-        Logger.recordOutput("Speeds given to Swerve to follow", speeds);
+        Logger.recordOutput("Speeds given to Swerve to follow", trajectorySpeeds);
     }
 
 
+    /*
+     * Puts a trajectory's field relative module forces into the robot frame. Choreo fills in the forces, for
+     * samples that don't have them (all zero) they're worked out from the chassis acceleration and the robot's mass.
+     */
+    private void updateRobotForces(Pose2d pose, double omega, double ax, double ay, double alpha, double[] forcesX, double[] forcesY) {
+        double cos = pose.getRotation().getCos();
+        double sin = pose.getRotation().getSin();
+
+        boolean hasForces = false;
+        for (int i = 0; i < robotForcesX.length; i++) {
+            hasForces |= forcesX[i] != 0.0 || forcesY[i] != 0.0;
+        }
+
+        if (hasForces) {
+            for (int i = 0; i < robotForcesX.length; i++) {
+                robotForcesX[i] = forcesX[i] * cos + forcesY[i] * sin;
+                robotForcesY[i] = -forcesX[i] * sin + forcesY[i] * cos;
+            }
+            return;
+        }
+
+        double robotAx = ax * cos + ay * sin;
+        double robotAy = -ax * sin + ay * cos;
+        double moduleMass = Constants.Swerve.robotMassKg / robotForcesX.length;
+        for (int i = 0; i < robotForcesX.length; i++) {
+            Translation2d location = Constants.Swerve.moduleTranslations[i];
+            /* Chassis acceleration, plus the tangential and centripetal parts from spinning */
+            robotForcesX[i] = moduleMass * (robotAx - alpha * location.getY() - omega * omega * location.getX());
+            robotForcesY[i] = moduleMass * (robotAy + alpha * location.getX() - omega * omega * location.getY());
+        }
+    }
+
     /* Used by SwerveControllerCommand in Auto */
     public void setModuleStates(SwerveModuleState[] desiredStates) {
         SwerveDriveKinematics.desaturateWheelSpeeds(desiredStates, Constants.Swerve.maxSpeed);
@@ -194,12 +444,72 @@ public class Swerve extends SubsystemBase {
         return positions;
     }
 
+    private SwervePoseEstimator makePoseEstimator(PoseEstimatorType type) {
+        switch (type) {
+            case EKF:
+                return new SwerveEKFPoseEstimator(
+                    Constants.Swerve.moduleTranslations,
+                    (int) Math.ceil(POSE_HISTORY_SECONDS * Constants.Swerve.odometryFrequency),
+                    Constants.Swerve.odometryXYVariancePerMeter,
+                    Constants.Swerve.odometryHeadingVariancePerRadian,
+                    getGyroYaw(),
+                    getModulePositions(),
+                    new Pose2d()
+                );
+            case WPILIB:
+            default:
+                return new WPILibSwervePoseEstimator(
+                    Constants.Swerve.swerveKinematics,
+                    getGyroYaw(),
+                    getModulePositions(),
+                    new Pose2d(),
+                    VecBuilder.fill(0.1, 0.1, 0.1),
+                    VecBuilder.fill(0.45, 0.45, Constants.PoseFilter.HEADING_STD_DEV)
+                );
+        }
+    }
+
     public Pose2d getPose() {
         return m_SwervePoseEstimator.getEstimatedPosition();
     }
 
+    /**
+     * @return The comparison estimator's pose, null if it isn't running
+     */
+    public Pose2d getComparisonPose() {
+        return comparisonEstimator != null ? comparisonEstimator.getEstimatedPosition() : null;
+    }
+
+    /**
+     * Gets the estimated pose at a time in the last POSE_HISTORY_SECONDS, allocation free
+     * @param timestampSeconds FPGA time
+     * @param out Filled with x, y and heading (meters, radians)
+     * @return False if there's no history yet
+     */
+    public boolean getPoseAt(double timestampSeconds, double[] out) {
+        return poseHistory.sample(timestampSeconds, out);
+    }
+
+    /**
+     * Same as getPoseAt(), but the pose from wheel and gyro odometry alone, without vision corrections
+     * @param timestampSeconds FPGA time
+     * @param out Filled with x, y and heading (meters, radians)
+     * @return False if there's no history yet
+     */
+    public boolean getOdometryPoseAt(double timestampSeconds, double[] out) {
+        return odometryHistory.sample(timestampSeconds, out);
+    }
+
     public void setPose(Pose2d pose) {
-        m_SwervePoseEstimator.resetPosition(getGyroYaw(), getModulePositions(), pose);
+        /* The old history is for where we thought we were, not where we are now */
+        poseHistory.clear();
+        odometryHistory.clear();
+        SwerveModulePosition[] positions = getModulePositions();
+        odometry.resetPosition(getGyroYaw(), positions, pose);
+        m_SwervePoseEstimator.resetPosition(getGyroYaw(), positions, pose);
+        if (comparisonEstimator != null) {
+            comparisonEstimator.resetPosition(getGyroYaw(), positions, pose);
+        }
     }
 
     public Rotation2d getHeading(){
@@ -207,11 +517,11 @@ public class Swerve extends SubsystemBase {
     }
 
     public void setHeading(Rotation2d heading){
-        m_SwervePoseEstimator.resetPosition(getGyroYaw(), getModulePositions(), new Pose2d(getPose().getTranslation(), heading));
+        setPose(new Pose2d(getPose().getTranslation(), heading));
     }
 
     public void zeroHeading(){
-        m_SwervePoseEstimator.resetPosition(getGyroYaw(), getModulePositions(), new Pose2d(getPose().getTranslation(), new Rotation2d()));
+        setPose(new Pose2d(getPose().getTranslation(), new Rotation2d()));
     }
 
     
@@ -220,7 +530,7 @@ public class Swerve extends SubsystemBase {
      */
 
     public Rotation2d getGyroYaw() {
-        return Rotation2d.fromDegrees(gyro.getYaw().getValueAsDouble());
+        return gyroYaw;
     } //Why do they keep changing the API? They gotta make up their minds ong
 
     /* 
@@ -244,47 +554,168 @@ public class Swerve extends SubsystemBase {
 
     @Override
     public void periodic(){
-
-        double[] array = {getPose().getX(), getPose().getY()};
-
-        SmartDashboard.putNumberArray("Swerve Pose Estimation", array);
-
-        m_SwervePoseEstimator.update(getGyroYaw(), getModulePositions());
-        for (PoseAndTimestampAndDev poseAndTimestamp : vision.getResults()) {
-            m_SwervePoseEstimator.addVisionMeasurement(
-                poseAndTimestamp.getPose(),
-                poseAndTimestamp.getTimestamp()
-                /*VecBuilder.fill(
-                    stdDev,
-                    stdDev,
-                    5.0
-                )*/
-            );
+        periodicStage.start();
+        /* One batched refresh for every module and gyro signal, the IOs only read the cached values. Nothing is registered in replay. */
+        SignalRegistry.refreshAll();
+        /* Everything below only reads from the logged inputs, so it runs the same in replay */
+        OdometryThread.odometryLock.lock();
+        try {
+            gyroIO.updateInputs(gyroInputs);
+            Logger.processInputs("Swerve/Gyro", gyroInputs);
+            for (SwerveModule mod : mSwerveMods) {
+                mod.periodic();
+            }
+            OdometryThread.getInstance().drainLatencyStats(odometryLatencyStats);
+        } finally {
+            OdometryThread.odometryLock.unlock();
+        }
+        gyroYaw = Rotation2d.fromDegrees(gyroInputs.yawDegrees);
+
+        Logger.recordOutput("Field Relative?", lastFieldRelative);
+        /* How misaligned odometry and vision would be with read time stamps (mean, max), and what's left between devices */
+        Logger.recordOutput(ODOMETRY_LATENCY_MEAN_KEY, odometryLatencyStats[0]);
+        Logger.recordOutput(ODOMETRY_LATENCY_MAX_KEY, odometryLatencyStats[1]);
+        Logger.recordOutput(ODOMETRY_SPREAD_KEY, odometryLatencyStats[2]);
+
+        /* Replay every sample the odometry thread took since the last loop */
+        double[] sampleTimestamps = mSwerveMods[0].getOdometryTimestamps();
+        List<PoseAndTimestampAndDev> visionMeasurements = vision.getMeasurements();
+
+        long primaryStart = System.nanoTime();
+        applyOdometry(m_SwervePoseEstimator, sampleTimestamps, true);
+        /* Each measurement replays the WPILib estimator's odometry from its timestamp, VisionSubsystem merges simultaneous ones to keep this to about one */
+        visionStage.start();
+        applyVision(m_SwervePoseEstimator, visionMeasurements);
+        visionStage.stop();
+        long primaryNanos = System.nanoTime() - primaryStart;
+        Logger.recordOutput(VISION_MEASUREMENT_COUNT_KEY, visionMeasurements.size());
+
+        if (comparisonEstimator != null) {
+            updateComparison(sampleTimestamps, visionMeasurements, primaryNanos);
         }
         
-        //SmartDashboard.putNumberArray("Robot Pose", new Double[]{getPose().getX(), getPose().getY(), getPose().getRotation().getDegrees()});
-        Logger.recordOutput("Robot Pose2d", getPose());
-        Logger.recordOutput("Gyro angle", getGyroYaw().getDegrees());
-        
+        long telemetryStart = System.nanoTime();
+        Pose2d pose = getPose();
         for (SwerveModule mod : mSwerveMods) {
-            Logger.recordOutput("Mod " + mod.moduleNumber + " CANcoder", mod.getCANcoder().getDegrees());
-            Logger.recordOutput("Mod " + mod.moduleNumber + " Angle", mod.getPosition().angle.getDegrees());
-            Logger.recordOutput("Mod " + mod.moduleNumber + " Velocity", mod.getState().speedMetersPerSecond); 
+            telemetryModuleStates[mod.moduleNumber] = mod.getState();
+        }
+        updateMeasuredVelocity(pose);
+        if (sampleTimestamps.length > 0) {
+            poseLatencySeconds = Timer.getFPGATimestamp() - sampleTimestamps[sampleTimestamps.length - 1];
         }
 
-        for(SwerveModule mod : mSwerveMods){
-            SmartDashboard.putNumber("Mod " + mod.moduleNumber + " CANcoder", mod.getCANcoder().getDegrees());
-            SmartDashboard.putNumber("Mod " + mod.moduleNumber + " Angle", mod.getPosition().angle.getDegrees());
-            SmartDashboard.putNumber("Mod " + mod.moduleNumber + " Velocity", mod.getState().speedMetersPerSecond);    
+        Logger.recordOutput(POSE_KEY, pose);
+        Logger.recordOutput(GYRO_KEY, gyroYaw.getDegrees());
+        Logger.recordOutput(MODULE_STATES_KEY, telemetryModuleStates);
+
+        if (Telemetry.isDue(Rate.FAST)) {
+            posePublisher.set(pose);
+            moduleStatesPublisher.set(telemetryModuleStates);
         }
+        if (Telemetry.isDue(Rate.MEDIUM)) {
+            gyroPublisher.set(gyroYaw.getDegrees());
+        }
+        /* Only really looked at when checking angle offsets */
+        if (Telemetry.isDue(Rate.SLOW)) {
+            for (SwerveModule mod : mSwerveMods) {
+                cancoderDegrees[mod.moduleNumber] = mod.getCANcoder().getDegrees();
+            }
+            cancoderPublisher.set(cancoderDegrees);
+        }
+        Logger.recordOutput(TELEMETRY_TIME_KEY, (System.nanoTime() - telemetryStart) / 1e3);
 
-        for (SwerveModule mod : mSwerveMods) {
-            SmartDashboard.putNumberArray("Module " + mod.moduleNumber, 
-                    new double[] {mod.getCANcoder().getDegrees(), 
-                    mod.getPosition().angle.getDegrees(), 
-                    mod.getState().speedMetersPerSecond});
+        periodicStage.stop();
+    }
+
+    /* Every odometry sample since the last loop, optionally recording the resulting poses into poseHistory and odometryHistory */
+    private void applyOdometry(SwervePoseEstimator estimator, double[] sampleTimestamps, boolean recordHistory) {
+        for (int i = 0; i < sampleTimestamps.length; i++) {
+            for (SwerveModule mod : mSwerveMods) {
+                odometryPositions[mod.moduleNumber] = mod.getOdometryPositions()[i];
+            }
+            /* Fall back to the latest yaw if the gyro didn't produce a matching sample */
+            double yawDegrees = i < gyroInputs.odometryYawDegrees.length ? gyroInputs.odometryYawDegrees[i] : gyroInputs.yawDegrees;
+            Rotation2d sampleYaw = Rotation2d.fromDegrees(yawDegrees);
+            Pose2d samplePose = estimator.updateWithTime(sampleTimestamps[i], sampleYaw, odometryPositions);
+            if (recordHistory) {
+                poseHistory.add(sampleTimestamps[i], samplePose.getX(), samplePose.getY(), samplePose.getRotation().getRadians());
+                Pose2d odometryPose = odometry.update(sampleYaw, odometryPositions);
+                odometryHistory.add(sampleTimestamps[i], odometryPose.getX(), odometryPose.getY(), odometryPose.getRotation().getRadians());
+            }
+        }
+    }
+
+    private void applyVision(SwervePoseEstimator estimator, List<PoseAndTimestampAndDev> visionMeasurements) {
+        for (PoseAndTimestampAndDev measurement : visionMeasurements) {
+            estimator.addVisionMeasurement(
+                measurement.getPose(),
+                measurement.getTimestamp(),
+                measurement.getStdDev(),
+                Constants.PoseFilter.HEADING_STD_DEV
+            );
+        }
+    }
+
+    /*
+     * Runs the comparison estimator on the same inputs and logs where it and the primary disagree. The inputs
+     * are all in the log, so replaying a match compares the estimators on real data (in sim, AutoHarnessTest also
+     * compares both against the true pose). Times are wall clock for this loop's odometry and vision.
+     */
+    private void updateComparison(double[] sampleTimestamps, List<PoseAndTimestampAndDev> visionMeasurements, long primaryNanos) {
+        long comparisonStart = System.nanoTime();
+        applyOdometry(comparisonEstimator, sampleTimestamps, false);
+        applyVision(comparisonEstimator, visionMeasurements);
+        long comparisonNanos = System.nanoTime() - comparisonStart;
+
+        Pose2d primary = m_SwervePoseEstimator.getEstimatedPosition();
+        Pose2d comparison = comparisonEstimator.getEstimatedPosition();
+        Logger.recordOutput(COMPARISON_POSE_KEY, comparison);
+        Logger.recordOutput(COMPARISON_DIFFERENCE_KEY, primary.getTranslation().getDistance(comparison.getTranslation()));
+        Logger.recordOutput(COMPARISON_HEADING_DIFFERENCE_KEY, primary.getRotation().minus(comparison.getRotation()).getDegrees());
+        Logger.recordOutput(PRIMARY_MICROS_KEY, primaryNanos / 1e3);
+        Logger.recordOutput(COMPARISON_MICROS_KEY, comparisonNanos / 1e3);
+    }
+
+    /*
+     * Least squares fit of the module states to a chassis velocity (what kinematics.toChassisSpeeds does,
+     * without the allocations), then rotated into field coordinates. The gyro's yaw rate is trusted over
+     * the wheels for rotation whenever it's connected.
+     */
+    private void updateMeasuredVelocity(Pose2d pose) {
+        double vx = 0.0;
+        double vy = 0.0;
+        for (int i = 0; i < 4; i++) {
+            SwerveModuleState state = telemetryModuleStates[i];
+            vx += state.speedMetersPerSecond * state.angle.getCos();
+            vy += state.speedMetersPerSecond * state.angle.getSin();
+        }
+        vx /= 4.0;
+        vy /= 4.0;
+
+        double omega;
+        if (gyroInputs.connected) {
+            omega = Math.toRadians(gyroInputs.yawVelocityDegPerSec);
+        } else {
+            double numerator = 0.0;
+            double denominator = 0.0;
+            for (int i = 0; i < 4; i++) {
+                SwerveModuleState state = telemetryModuleStates[i];
+                Translation2d location = Constants.Swerve.moduleTranslations[i];
+                numerator += location.getX() * state.speedMetersPerSecond * state.angle.getSin()
+                    - location.getY() * state.speedMetersPerSecond * state.angle.getCos();
+                denominator += location.getX() * location.getX() + location.getY() * location.getY();
+            }
+            omega = numerator / denominator;
         }
 
-        SmartDashboard.putNumber("Gyro angle", getGyroYaw().getDegrees());
+        robotVx = vx;
+        robotVy = vy;
+        robotOmega = omega;
+
+        double cos = pose.getRotation().getCos();
+        double sin = pose.getRotation().getSin();
+        fieldVx = vx * cos - vy * sin;
+        fieldVy = vx * sin + vy * cos;
+        fieldOmega = omega;
     }
 }
\ No newline at end of file
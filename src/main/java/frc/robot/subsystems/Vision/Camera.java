@@ -2,25 +2,10 @@ package frc.robot.subsystems.Vision;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
-import java.util.function.Supplier;
 
 import org.littletonrobotics.junction.Logger;
-import org.photonvision.EstimatedRobotPose;
-import org.photonvision.PhotonCamera;
-import org.photonvision.PhotonPoseEstimator;
-import org.photonvision.PhotonUtils;
-import org.photonvision.PhotonPoseEstimator.PoseStrategy;
-import org.photonvision.targeting.PhotonPipelineResult;
-import org.photonvision.targeting.PhotonTrackedTarget;
-
-import edu.wpi.first.apriltag.AprilTagFieldLayout;
 
 import edu.wpi.first.math.geometry.Pose2d;
-import edu.wpi.first.math.geometry.Pose3d;
-import edu.wpi.first.math.geometry.Transform3d;
-import edu.wpi.first.math.geometry.Translation2d;
-import edu.wpi.first.math.geometry.Translation3d;
 
 import edu.wpi.first.util.datalog.DataLog;
 import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
@@ -28,43 +13,46 @@ import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
 import edu.wpi.first.wpilibj.DataLogManager;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import frc.robot.Constants;
-import frc.robot.FieldLayout;
+import frc.robot.subsystems.Vision.CameraIO.PoseObservation;
 import frc.robot.subsystems.Vision.VisionSubsystem.PoseAndTimestampAndDev;
 
 public class Camera {
-    private PhotonCamera cam;
-    private PhotonPoseEstimator poseEstimator;
-    public List<PhotonTrackedTarget> targets = new ArrayList<>();
-    private Optional<PoseAndTimestampAndDev> estimate = null;
-    private Optional<Double> poseStdDevs;
-    private Supplier<Pose2d> robotPoseSupplier;
+    private final String name;
+    private final CameraIO io;
+    private final CameraIOInputsAutoLogged inputs = new CameraIOInputsAutoLogged();
+    private final String inputsKey;
+    private int cameraId = 0;
 
-    public DoubleArrayLogEntry cameraPoseEntry;
+    public List<Integer> targets = new ArrayList<>();
+    /* Every accepted estimate from this loop, oldest first */
+    private final List<PoseAndTimestampAndDev> estimates = new ArrayList<>();
+    private final VisionFilterChain filterChain;
 
-    public Camera(PhotonCamera cam, Transform3d robotToCam) {
-        this.cam = cam;
+    public DoubleArrayLogEntry cameraPoseEntry;
 
-        poseEstimator = new PhotonPoseEstimator(
-            new AprilTagFieldLayout(
-                FieldLayout.AprilTags.APRIL_TAG_POSE,
-                FieldLayout.FIELD_LENGTH,
-                FieldLayout.FIELD_WIDTH
-            ),
-            PoseStrategy.MULTI_TAG_PNP_ON_COPROCESSOR,
-            robotToCam
-        );
+    public Camera(String name, CameraIO io) {
+        this(name, io, VisionFilterChain.defaultChain());
+    }
 
+    /**
+     * @param filterChain Checks this camera's observations go through, each camera needs its own instance
+     */
+    public Camera(String name, CameraIO io, VisionFilterChain filterChain) {
+        this.name = name;
+        this.io = io;
+        this.inputsKey = "Vision/" + name;
+        this.filterChain = filterChain;
+        filterChain.setCameraName(name);
 
         DataLog log = DataLogManager.getLog();
 
-        cameraPoseEntry = new DoubleArrayLogEntry(log, "/vision/" + cam.getName() + "PoseEstimate");            
+        cameraPoseEntry = new DoubleArrayLogEntry(log, "/vision/" + name + "PoseEstimate");            
 
     }
   
     public void updateCameraPoseEntry() {
-        // Check if there is an estimate available
-        if (estimate != null) {
-            Pose2d pose = estimate.get().getPose();
+        for (PoseAndTimestampAndDev estimate : estimates) {
+            Pose2d pose = estimate.getPose();
             
             // Flatten the Pose2d data into individual components
             double[] poseData = { pose.getTranslation().getX(), 
@@ -72,122 +60,62 @@ public class Camera {
                                   pose.getRotation().getDegrees()};
     
             // Append the pose data to the DoubleArrayLogEntry
-            SmartDashboard.putNumberArray(cam.getName() + "Pose Estimate", poseData);
+            SmartDashboard.putNumberArray(name + "Pose Estimate", poseData);
             cameraPoseEntry.append(poseData);
-        } else {
         }
     }
-    
-    
-      
-
-    public void updateEstimate() {
-        /* Clear last estimate */
-        estimate = null;
-
-        //TODO: Fix use of deprecated function
-        var opt = poseEstimator.update(cam.getLatestResult());
-        EstimatedRobotPose result = opt.isPresent() ? opt.get() : null;
-
-        if (result != null) {
-            Pose3d pose = result.estimatedPose;
-            boolean shouldRejectPose = false;
-
-            List<Double> tagDistances = new ArrayList<>();
-            
-            /* Filtering; Reject unlikely*/
-            if (isPoseOutOfBounds(pose)) {
-                shouldRejectPose = true;
-            }
-            
-            /*if (robotPoseSupplier != null) {
-                if (!isPosePhysicallyPossible(robotPoseSupplier.get(), pose.toPose2d()) && !isPoseOutOfBounds(robotPoseSupplier.get())) {
-                    shouldRejectPose = true;
-                }
-            }*/
-
-            for (PhotonTrackedTarget target : result.targetsUsed) {
-                if (target.getPoseAmbiguity() > 0.2) {
-                    shouldRejectPose = true;
-                }
-
-                if (robotPoseSupplier != null) {
-                    Translation3d translation = target.getBestCameraToTarget().getTranslation();
-                    tagDistances.add(Math.hypot(translation.getX(), translation.getY()));
-                }
-            }
-
-            double sum = 0.0;
 
-            for (double distance : tagDistances) {
-                sum += distance;
-            }
-
-            double meanDist = sum/tagDistances.size();
+    public void updateInputs() {
+        io.updateInputs(inputs);
+        Logger.processInputs(inputsKey, inputs);
+    }
 
-            double sumOfSquares = 0.0;
-            
-            for (double dist : tagDistances) {
-                sumOfSquares+= Math.pow(dist - meanDist, 2);
-            }
-            
-            if (!shouldRejectPose) {
-                poseStdDevs = Optional.ofNullable(Math.sqrt(sumOfSquares/tagDistances.size()));
-                estimate = Optional.ofNullable(new PoseAndTimestampAndDev(result.estimatedPose.toPose2d(), result.timestampSeconds, poseStdDevs.get()));
+    public void updateEstimate() {
+        /* Clear last estimates */
+        estimates.clear();
+
+        for (PoseObservation observation : inputs.poseObservations) {
+            if (filterChain.accept(observation)) {
+                estimates.add(new PoseAndTimestampAndDev(
+                    observation.pose().toPose2d(),
+                    observation.timestamp(),
+                    VisionFilterChain.xyStdDev(Constants.PoseFilter.XY_STD_DEV_BASE, observation.tagCount(), observation.averageTagDistance()),
+                    observation.tagCount(),
+                    observation.averageTagDistance(),
+                    cameraId
+                ));
             }
         }
+        filterChain.logCounters();
     }
 
     public void updateTargets() {
         targets.clear();
-        PhotonPipelineResult result = cam.getLatestResult();
         
-        if (result.hasTargets()) {
-            List<PhotonTrackedTarget> trgts = result.getTargets();
-            for (PhotonTrackedTarget trgt : trgts) {
-                if (trgt.getPoseAmbiguity() < 0.2) {
-                    targets.add(trgt);
-                }
+        for (int i = 0; i < inputs.targetIds.length; i++) {
+            if (inputs.targetAmbiguities[i] < Constants.PoseFilter.MAX_AMBIGUITY) {
+                targets.add(inputs.targetIds[i]);
             }
         }
     }
 
-    public Optional<PoseAndTimestampAndDev> getEstimate() {
-        return estimate;
-    }
-
-    /*
-     * Checks if a new pose estimate is possible for the robot to achieve
-     * e.g, robot can't move faster than 18ft/s
-     * 
-     * Max distance is based off distance robot travels in 20ms (1 code cycle)
+    /**
+     * @return Every estimate that passed filtering this loop, in timestamp order
      */
-    private boolean isPosePhysicallyPossible(Pose2d prevPose, Pose2d newPose) {
-
-        Translation2d prevPoseTranslation = prevPose.getTranslation();
-        Translation2d newPoseTranslation = newPose.getTranslation();
-        
-        double maxDist = Constants.PoseFilter.MAX_DIST_BETWEEN_POSE;
-
-        return Math.abs(prevPoseTranslation.getDistance(newPoseTranslation)) < maxDist;
+    public List<PoseAndTimestampAndDev> getEstimates() {
+        return estimates;
     }
 
-    public void calculateStandardDeviation() {
+    public String getName() {
+        return name;
+    }
 
+    public VisionFilterChain getFilterChain() {
+        return filterChain;
     }
-    /*
-     * Checks if a given pose is outside of the field.
-     * Also checks for robot height off ground within a tolerance.
-     */
-    private boolean isPoseOutOfBounds(Pose3d pose) {
-        if (pose.getX() < 0 || pose.getX() > FieldLayout.FIELD_LENGTH) {
-            return true;
-        } else if (pose.getY() < 0 || pose.getY() > FieldLayout.FIELD_WIDTH) {
-            return true;
-        } else if (Math.abs(pose.getZ()) > Constants.PoseFilter.POSE_HEIGHT_TOLERANCE) {
-            return true;
-        } else {
-            return false;
-        }
+
+    /* Set by VisionSubsystem, tags every estimate from this camera */
+    void setCameraId(int cameraId) {
+        this.cameraId = cameraId;
     }
 }
\ No newline at end of file
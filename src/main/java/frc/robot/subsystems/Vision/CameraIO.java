@@ -0,0 +1,42 @@
+package frc.robot.subsystems.Vision;
+
+import org.littletonrobotics.junction.AutoLog;
+
+import edu.wpi.first.math.geometry.Pose3d;
+
+/*
+ * Hardware layer for a vision camera. The camera's pose solve ends up in here as observations,
+ * all the filtering happens in Camera so it can be replayed and retuned from a log.
+ *
+ * The default (empty) implementation is what gets used in replay.
+ */
+public interface CameraIO {
+    @AutoLog
+    public static class CameraIOInputs {
+        public boolean connected = false;
+        public PoseObservation[] poseObservations = new PoseObservation[0];
+
+        /* Every target in the latest frame */
+        public int[] targetIds = new int[0];
+        public double[] targetAmbiguities = new double[0];
+    }
+
+    /**
+     * A robot pose estimate from a single frame
+     * @param timestamp Capture time of the frame, in seconds
+     * @param pose Estimated robot pose
+     * @param maxAmbiguity Highest pose ambiguity of the tags used
+     * @param tagCount Number of tags used
+     * @param averageTagDistance Mean camera to tag distance, in meters
+     * @param tagDistanceStdDev Standard deviation of the camera to tag distances, in meters
+     */
+    public static record PoseObservation(
+        double timestamp,
+        Pose3d pose,
+        double maxAmbiguity,
+        int tagCount,
+        double averageTagDistance,
+        double tagDistanceStdDev) {}
+
+    public default void updateInputs(CameraIOInputs inputs) {}
+}
@@ -0,0 +1,174 @@
+package frc.robot.subsystems.Vision;
+
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.littletonrobotics.junction.Logger;
+
+import org.photonvision.EstimatedRobotPose;
+import org.photonvision.PhotonCamera;
+import org.photonvision.PhotonPoseEstimator;
+import org.photonvision.PhotonPoseEstimator.PoseStrategy;
+import org.photonvision.targeting.PhotonPipelineResult;
+import org.photonvision.targeting.PhotonTrackedTarget;
+
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.networktables.NetworkTableEvent;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.Timer;
+import frc.lib.util.SpscRingBuffer;
+import frc.robot.FieldLayout;
+
+/*
+ * Real camera running PhotonVision on a coprocessor.
+ *
+ * The pose solve runs on a worker thread that wakes up whenever the camera publishes a new frame,
+ * so it doesn't take time out of the main loop. Finished observations are handed to the main
+ * thread through a lock free queue and drained in updateInputs(), which keeps them logged as inputs
+ * for replay.
+ */
+public class CameraIOPhotonVision implements CameraIO {
+    private static final Comparator<PhotonPipelineResult> BY_TIMESTAMP =
+        Comparator.comparingDouble(PhotonPipelineResult::getTimestampSeconds);
+
+    /* About a second of frames at 60 fps, anything past this means the main loop isn't draining */
+    private static final int QUEUE_CAPACITY = 64;
+    /* Worker still checks in this often if no frame notifications come in */
+    private static final long WORKER_IDLE_TIMEOUT_NS = 100_000_000;
+    /* Most loops drain nothing, they all share this */
+    private static final PoseObservation[] NO_OBSERVATIONS = new PoseObservation[0];
+
+    protected final PhotonCamera camera;
+    private final PhotonPoseEstimator poseEstimator;
+
+    private final SpscRingBuffer<PoseObservation> observationQueue = new SpscRingBuffer<>(QUEUE_CAPACITY);
+    /* One array per drain size, made the first time that size comes up and reused after that */
+    private final PoseObservation[][] observationArrays = new PoseObservation[QUEUE_CAPACITY + 1][];
+    /* Targets seen in the newest frame, replaced as a whole so the two arrays always match */
+    private volatile TargetSnapshot latestTargets = new TargetSnapshot(new int[0], new double[0]);
+
+    private final AtomicLong droppedObservations = new AtomicLong();
+    private volatile double workerLatencySeconds = 0.0;
+
+    private final Thread worker;
+    private final String metricsKey;
+
+    private record TargetSnapshot(int[] ids, double[] ambiguities) {}
+
+    public CameraIOPhotonVision(String name, Transform3d robotToCam) {
+        camera = new PhotonCamera(name);
+        metricsKey = "Vision/" + name + "/Worker/";
+
+        poseEstimator = new PhotonPoseEstimator(
+            FieldLayout.AprilTags.LAYOUT,
+            PoseStrategy.MULTI_TAG_PNP_ON_COPROCESSOR,
+            robotToCam
+        );
+
+        worker = new Thread(this::runWorker, "Vision " + name);
+        worker.setDaemon(true);
+
+        /* Wake the worker as soon as PhotonVision publishes a frame */
+        NetworkTableInstance.getDefault().addListener(
+            new String[] {"/photonvision/" + name + "/rawBytes"},
+            EnumSet.of(NetworkTableEvent.Kind.kValueAll),
+            event -> LockSupport.unpark(worker)
+        );
+
+        worker.start();
+    }
+
+    private void runWorker() {
+        while (!Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(WORKER_IDLE_TIMEOUT_NS);
+
+            List<PhotonPipelineResult> results = camera.getAllUnreadResults();
+            if (results.isEmpty()) {
+                continue;
+            }
+            results.sort(BY_TIMESTAMP);
+
+            for (PhotonPipelineResult result : results) {
+                Optional<EstimatedRobotPose> opt = poseEstimator.update(result);
+                if (opt.isPresent() && !observationQueue.offer(toObservation(opt.get()))) {
+                    droppedObservations.incrementAndGet();
+                }
+            }
+
+            /* Capture of the newest frame to its observation being ready */
+            PhotonPipelineResult newest = results.get(results.size() - 1);
+            workerLatencySeconds = Timer.getFPGATimestamp() - newest.getTimestampSeconds();
+
+            List<PhotonTrackedTarget> targets = newest.getTargets();
+            int[] ids = new int[targets.size()];
+            double[] ambiguities = new double[targets.size()];
+            for (int i = 0; i < targets.size(); i++) {
+                ids[i] = targets.get(i).getFiducialId();
+                ambiguities[i] = targets.get(i).getPoseAmbiguity();
+            }
+            latestTargets = new TargetSnapshot(ids, ambiguities);
+        }
+    }
+
+    @Override
+    public void updateInputs(CameraIOInputs inputs) {
+        inputs.connected = camera.isConnected();
+
+        /* Only the main thread polls, so the queue can only grow past this while draining */
+        int queueDepth = observationQueue.size();
+        PoseObservation[] observations = NO_OBSERVATIONS;
+        if (queueDepth > 0) {
+            observations = observationArrays[queueDepth];
+            if (observations == null) {
+                observations = new PoseObservation[queueDepth];
+                observationArrays[queueDepth] = observations;
+            }
+            for (int i = 0; i < queueDepth; i++) {
+                observations[i] = observationQueue.poll();
+            }
+        }
+        inputs.poseObservations = observations;
+
+        TargetSnapshot targets = latestTargets;
+        inputs.targetIds = targets.ids();
+        inputs.targetAmbiguities = targets.ambiguities();
+
+        Logger.recordOutput(metricsKey + "QueueDepth", queueDepth);
+        Logger.recordOutput(metricsKey + "DroppedObservations", droppedObservations.get());
+        Logger.recordOutput(metricsKey + "LatencyMs", workerLatencySeconds * 1000.0);
+    }
+
+    private static PoseObservation toObservation(EstimatedRobotPose result) {
+        int tagCount = result.targetsUsed.size();
+        double maxAmbiguity = 0.0;
+        double sum = 0.0;
+        double sumOfSquares = 0.0;
+
+        for (PhotonTrackedTarget target : result.targetsUsed) {
+            maxAmbiguity = Math.max(maxAmbiguity, target.getPoseAmbiguity());
+
+            Translation3d translation = target.getBestCameraToTarget().getTranslation();
+            double distance = Math.hypot(translation.getX(), translation.getY());
+            sum += distance;
+            sumOfSquares += distance * distance;
+        }
+
+        double meanDist = sum / tagCount;
+        /* Population std dev, same as summing (dist - mean)^2 */
+        double variance = Math.max(0.0, sumOfSquares / tagCount - meanDist * meanDist);
+
+        return new PoseObservation(
+            result.timestampSeconds,
+            result.estimatedPose,
+            maxAmbiguity,
+            tagCount,
+            meanDist,
+            Math.sqrt(variance)
+        );
+    }
+}
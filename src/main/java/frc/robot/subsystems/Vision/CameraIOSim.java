@@ -0,0 +1,45 @@
+package frc.robot.subsystems.Vision;
+
+import org.photonvision.simulation.PhotonCameraSim;
+import org.photonvision.simulation.SimCameraProperties;
+import org.photonvision.simulation.VisionSystemSim;
+
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Transform3d;
+import frc.robot.FieldLayout;
+
+/*
+ * Simulated camera, PhotonVision's sim renders the tags the camera would see from the robot pose.
+ * Every camera shares one VisionSystemSim, which is stepped once per loop with updateSim().
+ */
+public class CameraIOSim extends CameraIOPhotonVision {
+    /* Shared by every simulated camera */
+    private static VisionSystemSim visionSim;
+
+    private final PhotonCameraSim cameraSim;
+
+    public CameraIOSim(String name, Transform3d robotToCam) {
+        super(name, robotToCam);
+
+        AprilTagFieldLayout layout = FieldLayout.AprilTags.LAYOUT;
+
+        if (visionSim == null) {
+            visionSim = new VisionSystemSim("main");
+            visionSim.addAprilTags(layout);
+        }
+
+        cameraSim = new PhotonCameraSim(camera, new SimCameraProperties(), layout);
+        visionSim.addCamera(cameraSim, robotToCam);
+    }
+
+    /**
+     * Renders every simulated camera's frame, call once per loop
+     * @param robotPose Where the robot actually is, not where odometry thinks it is
+     */
+    public static void updateSim(Pose2d robotPose) {
+        if (visionSim != null) {
+            visionSim.update(robotPose);
+        }
+    }
+}
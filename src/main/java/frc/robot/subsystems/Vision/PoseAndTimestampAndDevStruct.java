@@ -0,0 +1,64 @@
+package frc.robot.subsystems.Vision;
+
+import java.nio.ByteBuffer;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.util.struct.Struct;
+import frc.robot.subsystems.Vision.VisionSubsystem.PoseAndTimestampAndDev;
+
+/*
+ * Fixed size binary layout for a vision measurement, used for logging and NetworkTables.
+ * Packing writes straight into the caller's buffer, nothing is allocated.
+ */
+public class PoseAndTimestampAndDevStruct implements Struct<PoseAndTimestampAndDev> {
+    @Override
+    public Class<PoseAndTimestampAndDev> getTypeClass() {
+        return PoseAndTimestampAndDev.class;
+    }
+
+    @Override
+    public String getTypeName() {
+        return "PoseAndTimestampAndDev";
+    }
+
+    @Override
+    public int getSize() {
+        return Pose2d.struct.getSize() + kSizeDouble * 3 + kSizeInt32 * 2;
+    }
+
+    @Override
+    public String getSchema() {
+        return "Pose2d pose;double timestamp;double stdDev;int32 tagCount;double averageTagDistance;int32 cameraId";
+    }
+
+    @Override
+    public Struct<?>[] getNested() {
+        return new Struct<?>[] {Pose2d.struct};
+    }
+
+    @Override
+    public PoseAndTimestampAndDev unpack(ByteBuffer bb) {
+        Pose2d pose = Pose2d.struct.unpack(bb);
+        double timestamp = bb.getDouble();
+        double stdDev = bb.getDouble();
+        int tagCount = bb.getInt();
+        double averageTagDistance = bb.getDouble();
+        int cameraId = bb.getInt();
+        return new PoseAndTimestampAndDev(pose, timestamp, stdDev, tagCount, averageTagDistance, cameraId);
+    }
+
+    @Override
+    public void pack(ByteBuffer bb, PoseAndTimestampAndDev value) {
+        Pose2d.struct.pack(bb, value.getPose());
+        bb.putDouble(value.getTimestamp());
+        bb.putDouble(value.getStdDev());
+        bb.putInt(value.getTagCount());
+        bb.putDouble(value.getAverageTagDistance());
+        bb.putInt(value.getCameraId());
+    }
+
+    @Override
+    public boolean isImmutable() {
+        return true;
+    }
+}
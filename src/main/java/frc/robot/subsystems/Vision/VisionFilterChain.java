@@ -0,0 +1,343 @@
+package frc.robot.subsystems.Vision;
+
+import org.littletonrobotics.junction.Logger;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import frc.robot.Constants;
+import frc.robot.FieldLayout;
+import frc.robot.subsystems.Vision.CameraIO.PoseObservation;
+
+/*
+ * The checks a camera's pose observations go through before they're handed to the pose estimator.
+ *
+ * Stages run in order and the first one to reject an observation stops the chain, so cheap checks
+ * go first. Every stage counts what it rejected, and the counts are logged per camera under
+ * Vision/<camera>/Filter/ so the thresholds can be tuned from a log (the filtering all runs on
+ * logged inputs, so it replays too).
+ *
+ * Stages that compare against where the robot was use the pose at the frame's capture time, not
+ * the current one, since frames are usually 30-100ms old by the time they get here. They get both
+ * the estimated pose (odometry fused with vision) and the pure odometry pose, vision corrections
+ * jump the estimate so only the odometry pose says how the robot actually moved.
+ */
+public class VisionFilterChain {
+    /* Looks up the robot pose at a past time */
+    @FunctionalInterface
+    public interface PoseLookup {
+        /**
+         * @param out Filled with x, y and heading (meters, radians)
+         * @return False if there's no pose for that time
+         */
+        boolean getPoseAt(double timestampSeconds, double[] out);
+    }
+
+    public interface Stage {
+        /** Used in the log keys */
+        String getName();
+
+        /**
+         * @param estimatedPose Estimated pose (x, y, heading) when the frame was captured, null if there's no history
+         * @param odometryPose Odometry only pose (x, y, heading) when the frame was captured, null if there's no history
+         * @return If the observation passes
+         */
+        boolean accept(PoseObservation observation, double[] estimatedPose, double[] odometryPose);
+
+        /** Called for every observation that made it through the whole chain */
+        default void onAccepted(PoseObservation observation, double[] estimatedPose, double[] odometryPose) {}
+    }
+
+    private final Stage[] stages;
+    private final long[] rejections;
+    private long accepted = 0;
+    private long total = 0;
+
+    private PoseLookup estimatedPoseLookup = null;
+    private PoseLookup odometryPoseLookup = null;
+    private final double[] estimatedPose = new double[3];
+    private final double[] odometryPose = new double[3];
+
+    private String[] rejectionKeys = null;
+    private String acceptedKey;
+    private String totalKey;
+
+    public VisionFilterChain(Stage... stages) {
+        this.stages = stages;
+        this.rejections = new long[stages.length];
+    }
+
+    /**
+     * The chain every camera uses unless it's given its own, thresholds are in Constants.PoseFilter
+     */
+    public static VisionFilterChain defaultChain() {
+        return new VisionFilterChain(
+            new BoundsStage(Constants.PoseFilter.POSE_HEIGHT_TOLERANCE),
+            new AmbiguityStage(Constants.PoseFilter.MAX_AMBIGUITY),
+            new TagDistanceStage(Constants.PoseFilter.MAX_SINGLE_TAG_DISTANCE, Constants.PoseFilter.MAX_MULTI_TAG_DISTANCE),
+            new MotionConsistencyStage(
+                Constants.PoseFilter.MAX_DIST_BETWEEN_POSE,
+                Constants.PoseFilter.MOTION_MAX_GAP_SECONDS,
+                Constants.PoseFilter.MAX_CONSECUTIVE_REJECTIONS
+            ),
+            new InnovationStage(
+                Constants.PoseFilter.INNOVATION_SIGMAS,
+                Constants.PoseFilter.XY_STD_DEV_BASE,
+                Constants.PoseFilter.ESTIMATOR_UNCERTAINTY,
+                Constants.PoseFilter.MAX_CONSECUTIVE_REJECTIONS
+            )
+        );
+    }
+
+    /**
+     * Vision xy std dev model, grows with the square of tag distance and shrinks with tag count
+     * @param baseStdDev Std dev with one tag at 1 meter, meters
+     * @return Meters
+     */
+    public static double xyStdDev(double baseStdDev, int tagCount, double averageTagDistance) {
+        return baseStdDev * averageTagDistance * averageTagDistance / Math.max(1, tagCount);
+    }
+
+    /* Set by Camera, the log keys are built once here */
+    void setCameraName(String cameraName) {
+        String prefix = "Vision/" + cameraName + "/Filter/";
+        rejectionKeys = new String[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            rejectionKeys[i] = prefix + "Rejected/" + stages[i].getName();
+        }
+        acceptedKey = prefix + "Accepted";
+        totalKey = prefix + "Total";
+    }
+
+    void setPoseLookups(PoseLookup estimatedPoseLookup, PoseLookup odometryPoseLookup) {
+        this.estimatedPoseLookup = estimatedPoseLookup;
+        this.odometryPoseLookup = odometryPoseLookup;
+    }
+
+    /**
+     * Runs an observation through every stage
+     * @return If it should be used
+     */
+    public boolean accept(PoseObservation observation) {
+        total++;
+        double[] estimated = lookup(estimatedPoseLookup, observation.timestamp(), estimatedPose);
+        double[] odometry = lookup(odometryPoseLookup, observation.timestamp(), odometryPose);
+
+        for (int i = 0; i < stages.length; i++) {
+            if (!stages[i].accept(observation, estimated, odometry)) {
+                rejections[i]++;
+                return false;
+            }
+        }
+
+        accepted++;
+        for (Stage stage : stages) {
+            stage.onAccepted(observation, estimated, odometry);
+        }
+        return true;
+    }
+
+    /* out, or null if there's no pose for that time */
+    private static double[] lookup(PoseLookup lookup, double timestampSeconds, double[] out) {
+        return lookup != null && lookup.getPoseAt(timestampSeconds, out) ? out : null;
+    }
+
+    /** Logs the running counts, call once per loop */
+    public void logCounters() {
+        if (rejectionKeys == null) {
+            return;
+        }
+        for (int i = 0; i < stages.length; i++) {
+            Logger.recordOutput(rejectionKeys[i], rejections[i]);
+        }
+        Logger.recordOutput(acceptedKey, accepted);
+        Logger.recordOutput(totalKey, total);
+    }
+
+    /* Off the field, or floating/sunk (the robot is always on the carpet) */
+    public static class BoundsStage implements Stage {
+        private final double heightTolerance;
+
+        public BoundsStage(double heightTolerance) {
+            this.heightTolerance = heightTolerance;
+        }
+
+        @Override
+        public String getName() {
+            return "Bounds";
+        }
+
+        @Override
+        public boolean accept(PoseObservation observation, double[] estimatedPose, double[] odometryPose) {
+            Pose3d pose = observation.pose();
+            return pose.getX() >= 0 && pose.getX() <= FieldLayout.FIELD_LENGTH
+                && pose.getY() >= 0 && pose.getY() <= FieldLayout.FIELD_WIDTH
+                && Math.abs(pose.getZ()) <= heightTolerance;
+        }
+    }
+
+    /* Tags PhotonVision wasn't sure which way they were facing */
+    public static class AmbiguityStage implements Stage {
+        private final double maxAmbiguity;
+
+        public AmbiguityStage(double maxAmbiguity) {
+            this.maxAmbiguity = maxAmbiguity;
+        }
+
+        @Override
+        public String getName() {
+            return "Ambiguity";
+        }
+
+        @Override
+        public boolean accept(PoseObservation observation, double[] estimatedPose, double[] odometryPose) {
+            return observation.maxAmbiguity() <= maxAmbiguity;
+        }
+    }
+
+    /* Tags too far away to be accurate, more tags can be trusted from further */
+    public static class TagDistanceStage implements Stage {
+        private final double maxSingleTagDistance;
+        private final double maxMultiTagDistance;
+
+        public TagDistanceStage(double maxSingleTagDistance, double maxMultiTagDistance) {
+            this.maxSingleTagDistance = maxSingleTagDistance;
+            this.maxMultiTagDistance = maxMultiTagDistance;
+        }
+
+        @Override
+        public String getName() {
+            return "TagDistance";
+        }
+
+        @Override
+        public boolean accept(PoseObservation observation, double[] estimatedPose, double[] odometryPose) {
+            double maxDistance = observation.tagCount() > 1 ? maxMultiTagDistance : maxSingleTagDistance;
+            return observation.averageTagDistance() <= maxDistance;
+        }
+    }
+
+    /*
+     * How far vision says the robot moved since this camera's last accepted frame has to agree with how
+     * far odometry says it moved between the same two capture times. Comparing motion instead of
+     * absolute poses means it still works when the estimate has drifted.
+     * Uses the odometry only pose, the estimate jumps whenever another camera's measurement is applied,
+     * which would show up here as motion the robot never made.
+     */
+    public static class MotionConsistencyStage implements Stage {
+        private final double maxDisagreement;
+        private final double maxGapSeconds;
+        private final int maxConsecutiveRejections;
+
+        private boolean hasLast = false;
+        private double lastTimestamp;
+        private double lastVisionX;
+        private double lastVisionY;
+        private double lastOdometryX;
+        private double lastOdometryY;
+        private int consecutiveRejections = 0;
+
+        /**
+         * @param maxDisagreement Meters
+         * @param maxGapSeconds Frames further apart than this aren't compared
+         * @param maxConsecutiveRejections After this many in a row the last frame was probably the bad one, start over
+         */
+        public MotionConsistencyStage(double maxDisagreement, double maxGapSeconds, int maxConsecutiveRejections) {
+            this.maxDisagreement = maxDisagreement;
+            this.maxGapSeconds = maxGapSeconds;
+            this.maxConsecutiveRejections = maxConsecutiveRejections;
+        }
+
+        @Override
+        public String getName() {
+            return "MotionConsistency";
+        }
+
+        @Override
+        public boolean accept(PoseObservation observation, double[] estimatedPose, double[] odometryPose) {
+            if (odometryPose == null || !hasLast || observation.timestamp() - lastTimestamp > maxGapSeconds) {
+                return true;
+            }
+
+            double visionDx = observation.pose().getX() - lastVisionX;
+            double visionDy = observation.pose().getY() - lastVisionY;
+            double odometryDx = odometryPose[0] - lastOdometryX;
+            double odometryDy = odometryPose[1] - lastOdometryY;
+
+            if (Math.hypot(visionDx - odometryDx, visionDy - odometryDy) <= maxDisagreement) {
+                return true;
+            }
+            if (++consecutiveRejections >= maxConsecutiveRejections) {
+                hasLast = false;
+                consecutiveRejections = 0;
+            }
+            return false;
+        }
+
+        @Override
+        public void onAccepted(PoseObservation observation, double[] estimatedPose, double[] odometryPose) {
+            consecutiveRejections = 0;
+            if (odometryPose == null) {
+                hasLast = false;
+                return;
+            }
+            hasLast = true;
+            lastTimestamp = observation.timestamp();
+            lastVisionX = observation.pose().getX();
+            lastVisionY = observation.pose().getY();
+            lastOdometryX = odometryPose[0];
+            lastOdometryY = odometryPose[1];
+        }
+    }
+
+    /*
+     * The measurement can't be further from the estimate at capture time than its own uncertainty plus the
+     * estimator's allows (vision std dev from xyStdDev()).
+     * If everything is getting rejected the estimate is probably what's wrong (e.g. never seeded), so one
+     * measurement is let through to re-localize.
+     */
+    public static class InnovationStage implements Stage {
+        private final double sigmas;
+        private final double baseStdDev;
+        private final double estimatorUncertainty;
+        private final int maxConsecutiveRejections;
+
+        private int consecutiveRejections = 0;
+
+        /**
+         * @param sigmas How many vision std devs away a measurement can be
+         * @param baseStdDev Vision std dev with one tag at 1 meter, meters
+         * @param estimatorUncertainty How far off the estimate itself could be, meters
+         * @param maxConsecutiveRejections Lets one through after this many in a row
+         */
+        public InnovationStage(double sigmas, double baseStdDev, double estimatorUncertainty, int maxConsecutiveRejections) {
+            this.sigmas = sigmas;
+            this.baseStdDev = baseStdDev;
+            this.estimatorUncertainty = estimatorUncertainty;
+            this.maxConsecutiveRejections = maxConsecutiveRejections;
+        }
+
+        @Override
+        public String getName() {
+            return "Innovation";
+        }
+
+        @Override
+        public boolean accept(PoseObservation observation, double[] estimatedPose, double[] odometryPose) {
+            if (estimatedPose == null) {
+                return true;
+            }
+
+            double stdDev = xyStdDev(baseStdDev, observation.tagCount(), observation.averageTagDistance());
+            double error = Math.hypot(observation.pose().getX() - estimatedPose[0], observation.pose().getY() - estimatedPose[1]);
+
+            if (error <= sigmas * stdDev + estimatorUncertainty) {
+                consecutiveRejections = 0;
+                return true;
+            }
+            if (++consecutiveRejections > maxConsecutiveRejections) {
+                consecutiveRejections = 0;
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package frc.robot.subsystems.Vision;
+
+import java.util.List;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import frc.robot.subsystems.Vision.VisionSubsystem.PoseAndTimestampAndDev;
+
+/*
+ * Merges vision measurements captured at about the same time into one.
+ *
+ * Every addVisionMeasurement() makes SwerveDrivePoseEstimator rewind to the measurement's timestamp and
+ * replay its odometry from there, so four cameras seeing tags in the same loop cost four replays. Merged
+ * first, it's one.
+ *
+ * Measurements are weighted by inverse variance (1 / stdDev^2), so the merged pose is what the estimator
+ * would have converged to from the separate ones, and its std dev shrinks as more agree. The merged
+ * timestamp is weighted the same way, which is off by at most half the window times the robot's speed.
+ *
+ * That weighting assumes the measurements are independent. Consecutive frames from one camera aren't (same
+ * tags, same calibration error), so only the newest frame from each camera in a window is merged.
+ *
+ * Windows are greedy: each one starts at the oldest measurement not yet merged and takes everything within
+ * windowSeconds of it. So where the windows fall depends on the first measurement, and two measurements
+ * closer together than the window can still end up in neighboring windows.
+ */
+public class VisionFusion {
+    /* cameraId of a measurement merged from more than one camera */
+    public static final int FUSED_CAMERA_ID = -1;
+
+    private final double windowSeconds;
+
+    /**
+     * @param windowSeconds Measurements captured within this long of the first one in a group are merged
+     */
+    public VisionFusion(double windowSeconds) {
+        this.windowSeconds = windowSeconds;
+    }
+
+    /**
+     * @param measurements Oldest first
+     * @param out Cleared, then filled with one measurement per window, oldest first. A window with only one
+     * camera gets that camera's newest measurement instance.
+     */
+    public void fuse(List<PoseAndTimestampAndDev> measurements, List<PoseAndTimestampAndDev> out) {
+        out.clear();
+
+        int start = 0;
+        while (start < measurements.size()) {
+            double windowEnd = measurements.get(start).getTimestamp() + windowSeconds;
+            int end = start + 1;
+            while (end < measurements.size() && measurements.get(end).getTimestamp() <= windowEnd) {
+                end++;
+            }
+
+            int newest = -1;
+            int kept = 0;
+            for (int i = start; i < end; i++) {
+                if (isNewestFromCamera(measurements, i, end)) {
+                    newest = i;
+                    kept++;
+                }
+            }
+
+            out.add(kept == 1 ? measurements.get(newest) : merge(measurements, start, end));
+            start = end;
+        }
+    }
+
+    /* If no later measurement in [i, end) came from the same camera */
+    private static boolean isNewestFromCamera(List<PoseAndTimestampAndDev> measurements, int i, int end) {
+        int cameraId = measurements.get(i).getCameraId();
+        for (int j = i + 1; j < end; j++) {
+            if (measurements.get(j).getCameraId() == cameraId) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* Merges the newest measurement from each camera in measurements[start, end) */
+    private static PoseAndTimestampAndDev merge(List<PoseAndTimestampAndDev> measurements, int start, int end) {
+        double weightSum = 0.0;
+        double x = 0.0;
+        double y = 0.0;
+        double cos = 0.0;
+        double sin = 0.0;
+        double timestamp = 0.0;
+        double averageTagDistance = 0.0;
+        int tagCount = 0;
+        int cameraId = measurements.get(start).getCameraId();
+
+        for (int i = start; i < end; i++) {
+            if (!isNewestFromCamera(measurements, i, end)) {
+                continue;
+            }
+            PoseAndTimestampAndDev measurement = measurements.get(i);
+            /* A zero std dev would swamp everything else, clamp it to something tiny instead */
+            double stdDev = Math.max(measurement.getStdDev(), 1e-3);
+            double weight = 1.0 / (stdDev * stdDev);
+            Pose2d pose = measurement.getPose();
+
+            weightSum += weight;
+            x += weight * pose.getX();
+            y += weight * pose.getY();
+            cos += weight * pose.getRotation().getCos();
+            sin += weight * pose.getRotation().getSin();
+            timestamp += weight * measurement.getTimestamp();
+            averageTagDistance += weight * measurement.getAverageTagDistance();
+            tagCount += measurement.getTagCount();
+            if (measurement.getCameraId() != cameraId) {
+                cameraId = FUSED_CAMERA_ID;
+            }
+        }
+
+        return new PoseAndTimestampAndDev(
+            new Pose2d(x / weightSum, y / weightSum, new Rotation2d(cos, sin)),
+            timestamp / weightSum,
+            1.0 / Math.sqrt(weightSum),
+            tagCount,
+            averageTagDistance / weightSum,
+            cameraId
+        );
+    }
+}
@@ -1,20 +1,26 @@
 package frc.robot.subsystems.Vision;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Optional;
 
 import org.littletonrobotics.junction.Logger;
 
 import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.networktables.StructArrayPublisher;
 import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
+import edu.wpi.first.util.struct.StructSerializable;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.lib.util.LoopProfiler;
+import frc.lib.util.Telemetry;
+import frc.lib.util.Telemetry.Rate;
+import frc.robot.Constants;
 
 public class VisionSubsystem extends SubsystemBase {
     
+    private static final Comparator<PoseAndTimestampAndDev> BY_TIMESTAMP =
+        Comparator.comparingDouble(PoseAndTimestampAndDev::getTimestamp);
+
     /* Might need to create a custom class if I need more features. */
     private Camera[] cameras;
 
@@ -23,56 +29,124 @@ public class VisionSubsystem extends SubsystemBase {
 
     public DoubleArrayLogEntry cameraPoseEntry;
 
+    /* What the estimator gets, results merged per time window when fusion is on */
+    private final List<PoseAndTimestampAndDev> fusedResults = new ArrayList<>();
+    private final VisionFusion fusion = new VisionFusion(Constants.PoseFilter.FUSION_WINDOW_SECONDS);
+    private boolean fusionEnabled = Constants.PoseFilter.FUSE_MEASUREMENTS;
+
+    private static final String RESULTS_KEY = "Vision/AcceptedMeasurements";
+    private static final String FUSED_RESULTS_KEY = "Vision/FusedMeasurements";
+    private final StructArrayPublisher<PoseAndTimestampAndDev> resultsPublisher =
+        Telemetry.structArrayPublisher("Vision Measurements", PoseAndTimestampAndDev.struct);
+    private final LoopProfiler.Stage periodicStage = LoopProfiler.stage("Vision");
+
+    /* One array per result count, so logging the results doesn't allocate once warmed up */
+    private final PoseAndTimestampAndDev[][] resultArrays = new PoseAndTimestampAndDev[64][];
+    private final PoseAndTimestampAndDev[][] fusedResultArrays = new PoseAndTimestampAndDev[64][];
+
     public VisionSubsystem(Camera[] cameras) {
         this.cameras = cameras;      
+
+        for (int i = 0; i < cameras.length; i++) {
+            cameras[i].setCameraId(i);
+        }
     }
 
-    public byte[] convertToByteArray(Optional<VisionSubsystem.PoseAndTimestampAndDev> optionalPose) {
-        if (optionalPose.isPresent()) {
-            VisionSubsystem.PoseAndTimestampAndDev pose = optionalPose.get();
-    
-            try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-                 ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream)) {
-    
-                objectOutputStream.writeObject(pose);
-                return byteArrayOutputStream.toByteArray();
-    
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+    /**
+     * Gives every camera's filter chain the estimated and odometry only pose histories, so measurements
+     * can be checked against where the robot was and how it moved when the frames were captured
+     */
+    public void setPoseLookups(VisionFilterChain.PoseLookup estimatedPoseLookup, VisionFilterChain.PoseLookup odometryPoseLookup) {
+        for (Camera camera : cameras) {
+            camera.getFilterChain().setPoseLookups(estimatedPoseLookup, odometryPoseLookup);
         }
-        return new byte[0]; // Return an empty byte array if the Optional is empty
     }
-    
+
     @Override
     public void periodic() {
+        periodicStage.start();
 
         results.clear();
         
         for (Camera cam : cameras) {
+            cam.updateInputs();
             cam.updateEstimate();
             cam.updateCameraPoseEntry();
-            Optional<PoseAndTimestampAndDev> camEst = cam.getEstimate();
-            if (camEst != null) {
-                results.add(camEst.get());
-                Logger.recordOutput("Camera " + cam + " Pose", camEst.get().getPose());
+            cam.updateTargets();
+
+            List<PoseAndTimestampAndDev> camEsts = cam.getEstimates();
+            results.addAll(camEsts);
+            if (!camEsts.isEmpty()) {
+                Logger.recordOutput("Camera " + cam.getName() + " Pose", camEsts.get(camEsts.size() - 1).getPose());
             }
         }
+
+        /* Oldest first, so the estimator gets them in the order they were seen */
+        results.sort(BY_TIMESTAMP);
+
+        PoseAndTimestampAndDev[] resultArray = getResultArray(results, resultArrays);
+        Logger.recordOutput(RESULTS_KEY, PoseAndTimestampAndDev.struct, resultArray);
+        if (Telemetry.isDue(Rate.FAST)) {
+            resultsPublisher.set(resultArray);
+        }
+
+        if (fusionEnabled) {
+            fusion.fuse(results, fusedResults);
+            Logger.recordOutput(FUSED_RESULTS_KEY, PoseAndTimestampAndDev.struct, getResultArray(fusedResults, fusedResultArrays));
+        }
+
+        periodicStage.stop();
     }  
 
+    private static PoseAndTimestampAndDev[] getResultArray(List<PoseAndTimestampAndDev> list, PoseAndTimestampAndDev[][] arrays) {
+        int size = list.size();
+        if (size >= arrays.length) {
+            return list.toArray(new PoseAndTimestampAndDev[size]);
+        }
+        if (arrays[size] == null) {
+            arrays[size] = new PoseAndTimestampAndDev[size];
+        }
+        return list.toArray(arrays[size]);
+    }
+
+    /**
+     * @return Every measurement accepted this loop, oldest first
+     */
     public List<PoseAndTimestampAndDev> getResults() {
         return results;
     }
 
-    public static class PoseAndTimestampAndDev {
-        Pose2d pose;
-        double timestamp;
-        double stdDev;
+    /**
+     * @return What the pose estimator should use this loop, oldest first. With fusion on, measurements
+     * captured within Constants.PoseFilter.FUSION_WINDOW_SECONDS of each other are merged into one.
+     */
+    public List<PoseAndTimestampAndDev> getMeasurements() {
+        return fusionEnabled ? fusedResults : results;
+    }
+
+    /* For comparing estimator cost and accuracy with and without fusion */
+    public void setFusionEnabled(boolean enabled) {
+        fusionEnabled = enabled;
+        fusedResults.clear();
+    }
 
-        public PoseAndTimestampAndDev(Pose2d pose, double timestamp, double stdDev) {
+    public static class PoseAndTimestampAndDev implements StructSerializable {
+        public static final PoseAndTimestampAndDevStruct struct = new PoseAndTimestampAndDevStruct();
+
+        private final Pose2d pose;
+        private final double timestamp;
+        private final double stdDev;
+        private final int tagCount;
+        private final double averageTagDistance;
+        private final int cameraId;
+
+        public PoseAndTimestampAndDev(Pose2d pose, double timestamp, double stdDev, int tagCount, double averageTagDistance, int cameraId) {
             this.pose = pose;
             this.timestamp = timestamp;
             this.stdDev = stdDev;
+            this.tagCount = tagCount;
+            this.averageTagDistance = averageTagDistance;
+            this.cameraId = cameraId;
         }
 
         public Pose2d getPose() {
@@ -83,9 +157,27 @@ public class VisionSubsystem extends SubsystemBase {
             return timestamp;
         }
 
+        /**
+         * @return xy std dev in meters, from VisionFilterChain.xyStdDev() or merged by VisionFusion
+         */
         public double getStdDev() {
             return stdDev;
         }
+
+        public int getTagCount() {
+            return tagCount;
+        }
+
+        public double getAverageTagDistance() {
+            return averageTagDistance;
+        }
+
+        /**
+         * @return Index of the camera in the VisionSubsystem's camera array, VisionFusion.FUSED_CAMERA_ID if merged from several
+         */
+        public int getCameraId() {
+            return cameraId;
+        }
     }
 
     public Camera[] getCameraArray() {
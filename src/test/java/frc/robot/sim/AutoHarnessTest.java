@@ -0,0 +1,346 @@
+package frc.robot.sim;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import choreo.trajectory.SwerveSample;
+import edu.wpi.first.hal.AllianceStationID;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import edu.wpi.first.wpilibj2.command.Commands;
+import frc.robot.Constants;
+import frc.robot.FieldLayout;
+import frc.robot.RobotContainer;
+import frc.robot.SwerveDriveSim;
+import frc.robot.autos.exampleAuto;
+import frc.robot.subsystems.Swerve;
+
+/*
+ * Runs the autos headless in simulation with stepped HAL timing. Each auto's true (simulated) pose
+ * is compared against its reference trajectory every loop, and the test fails if it tracks worse
+ * than the limits below. Heading is compared against what the auto commands at each sample.
+ *
+ * The HAL clock is stepped in real time, not as fast as the computer can go. Phoenix's simulated
+ * devices run their control loops and publish status frames on the wall clock no matter how the
+ * HAL is stepped, so stepping ahead of it would make the results depend on how fast the host is.
+ * The stepping is paced (in SwerveDriveSim sized steps) to stay level with the wall clock instead of
+ * driving the module model directly, so the TalonFX closed loops stay in the loop being tested.
+ *
+ * The cameras get the empty IO. The PhotonVision sim renders frames and solves poses on its own
+ * threads, which would make the results change from run to run, and the tracking numbers here are
+ * about the drivetrain anyway.
+ *
+ * Also reports (through the test report, not as pass/fail) how far each pose estimator's estimate
+ * was from the true pose, the primary one and the comparison one when
+ * Constants.Swerve.comparePoseEstimators.
+ */
+public class AutoHarnessTest {
+    private static final double LOOP_PERIOD = 0.02;
+    /* Same as SwerveDriveSim's update period */
+    private static final double PACE_STEP = 0.001;
+
+    /* Extra time after the trajectory ends for the auto to finish */
+    private static final double TIMEOUT_MARGIN = 2.0;
+    /* Time for the modules to stop between autos */
+    private static final double SETTLE_TIME = 1.0;
+
+    /* Skew measurement, drive straight along x while spinning one full turn */
+    private static final double SKEW_SPEED = 2.0;
+    private static final double SKEW_OMEGA = Math.PI;
+    private static final double SKEW_TIME = 2.0;
+
+    private static final double MAX_POSE_ERROR_METERS = 0.5;
+    private static final double MAX_RMS_POSE_ERROR_METERS = 0.25;
+
+    private static RobotContainer container;
+    /* Wall clock time (System.nanoTime()) the HAL clock should have caught up to by the next step */
+    private static long nextWallNanos;
+
+    private record Routine(
+        String name,
+        Function<RobotContainer, Command> command,
+        Function<RobotContainer, Trajectory> reference,
+        /* Heading the command is aiming for, given the reference and the time into it */
+        BiFunction<Trajectory, Double, Rotation2d> heading
+    ) {
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private record Result(
+        double maxErrorMeters,
+        double rmsErrorMeters,
+        double maxHeadingErrorDegrees,
+        double simSeconds,
+        double simSecondsPerWallSecond,
+        boolean finished,
+        double estimateRmsErrorMeters,
+        double comparisonEstimateRmsErrorMeters
+    ) {}
+
+    static List<Routine> routines() {
+        return List.of(
+            new Routine(
+                "exampleAuto",
+                RobotContainer::getAutonomousCommand,
+                container -> ((exampleAuto) container.getAutonomousCommand()).getTrajectory(),
+                AutoHarnessTest::endHeading
+            ),
+            new Routine(
+                "exampleAuto (followTrajectory)",
+                container -> followTrajectory(container.getSwerve(), new exampleAuto(container.getSwerve()).getTrajectory(), false),
+                container -> new exampleAuto(container.getSwerve()).getTrajectory(),
+                AutoHarnessTest::startHeading
+            ),
+            new Routine(
+                "exampleAuto (torque current)",
+                container -> followTrajectory(container.getSwerve(), new exampleAuto(container.getSwerve()).getTrajectory(), true),
+                container -> new exampleAuto(container.getSwerve()).getTrajectory(),
+                AutoHarnessTest::startHeading
+            )
+        );
+    }
+
+    /* SwerveControllerCommand without a heading supplier aims for the trajectory's end heading the whole way */
+    private static Rotation2d endHeading(Trajectory trajectory, double time) {
+        return trajectory.sample(trajectory.getTotalTimeSeconds()).poseMeters.getRotation();
+    }
+
+    /* followTrajectory() below holds the heading the trajectory starts with */
+    private static Rotation2d startHeading(Trajectory trajectory, double time) {
+        return trajectory.getInitialPose().getRotation();
+    }
+
+    @BeforeAll
+    public static void setup() {
+        assertTrue(HAL.initialize(500, 0), "Failed to initialize the HAL");
+        SimHooks.pauseTiming();
+
+        DriverStationSim.setAllianceStationId(AllianceStationID.Blue1);
+        DriverStationSim.setDsAttached(true);
+        DriverStationSim.setAutonomous(true);
+        DriverStationSim.setEnabled(true);
+        DriverStationSim.notifyNewData();
+        DriverStation.refreshData();
+
+        container = new RobotContainer(false);
+        assertTrue(container.getDriveSim() != null, "The auto harness has to run in SIM mode");
+        nextWallNanos = System.nanoTime();
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        CommandScheduler.getInstance().cancelAll();
+        DriverStationSim.setEnabled(false);
+        DriverStationSim.notifyNewData();
+        SimHooks.resumeTiming();
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("routines")
+    public void tracksReference(Routine routine, TestReporter reporter) {
+        Result result = run(routine);
+
+        reporter.publishEntry("maxErrorMeters", String.format("%.3f", result.maxErrorMeters()));
+        reporter.publishEntry("rmsErrorMeters", String.format("%.3f", result.rmsErrorMeters()));
+        reporter.publishEntry("maxHeadingErrorDegrees", String.format("%.1f", result.maxHeadingErrorDegrees()));
+        reporter.publishEntry("simSecondsPerWallSecond", String.format("%.1f", result.simSecondsPerWallSecond()));
+        reporter.publishEntry("estimateRmsErrorMeters (" + Constants.Swerve.poseEstimator + ")", String.format("%.3f", result.estimateRmsErrorMeters()));
+        reporter.publishEntry("comparisonEstimateRmsErrorMeters", String.format("%.3f", result.comparisonEstimateRmsErrorMeters()));
+
+        assertTrue(result.finished(), routine + " didn't finish within " + TIMEOUT_MARGIN + " s of the trajectory's end");
+        assertTrue(
+            result.maxErrorMeters() < MAX_POSE_ERROR_METERS,
+            String.format("%s max error %.3f m, limit %.3f m", routine, result.maxErrorMeters(), MAX_POSE_ERROR_METERS)
+        );
+        assertTrue(
+            result.rmsErrorMeters() < MAX_RMS_POSE_ERROR_METERS,
+            String.format("%s rms error %.3f m, limit %.3f m", routine, result.rmsErrorMeters(), MAX_RMS_POSE_ERROR_METERS)
+        );
+    }
+
+    @Test
+    public void secondOrderReducesSkew(TestReporter reporter) {
+        double firstOrderSkew = measureSkew(false);
+        double secondOrderSkew = measureSkew(true);
+
+        reporter.publishEntry("firstOrderSkewDegrees", String.format("%.2f", firstOrderSkew));
+        reporter.publishEntry("secondOrderSkewDegrees", String.format("%.2f", secondOrderSkew));
+
+        assertTrue(
+            Math.abs(secondOrderSkew) <= Math.abs(firstOrderSkew),
+            String.format("Second order skew %.2f deg, first order %.2f deg", secondOrderSkew, firstOrderSkew)
+        );
+    }
+
+    private static Result run(Routine routine) {
+        Swerve swerve = container.getSwerve();
+        SwerveDriveSim driveSim = container.getDriveSim();
+        Trajectory reference = routine.reference().apply(container);
+
+        /* Stop, then put the robot (both the real and estimated pose) at the start of the trajectory */
+        swerve.drive(0.0, 0.0, 0.0, false, true);
+        step(SETTLE_TIME);
+        driveSim.setPose(reference.getInitialPose());
+        swerve.setPose(reference.getInitialPose());
+
+        Command command = routine.command().apply(container);
+        CommandScheduler.getInstance().schedule(command);
+
+        double timeout = reference.getTotalTimeSeconds() + TIMEOUT_MARGIN;
+        double startTime = Timer.getFPGATimestamp();
+        long wallStart = System.nanoTime();
+
+        double maxError = 0.0;
+        double sumSquaredError = 0.0;
+        double maxHeadingError = 0.0;
+        double sumSquaredEstimateError = 0.0;
+        double sumSquaredComparisonError = 0.0;
+        int samples = 0;
+
+        double elapsed = 0.0;
+        while (CommandScheduler.getInstance().isScheduled(command) && elapsed < timeout) {
+            step(LOOP_PERIOD);
+            elapsed = Timer.getFPGATimestamp() - startTime;
+
+            Pose2d expected = reference.sample(elapsed).poseMeters;
+            Pose2d actual = driveSim.getPose();
+            double error = expected.getTranslation().getDistance(actual.getTranslation());
+            /* Trajectory poses point along the path, not where the robot is facing, so heading has its own reference */
+            double headingError = Math.abs(routine.heading().apply(reference, elapsed).minus(actual.getRotation()).getDegrees());
+
+            maxError = Math.max(maxError, error);
+            sumSquaredError += error * error;
+            maxHeadingError = Math.max(maxHeadingError, headingError);
+
+            double estimateError = swerve.getPose().getTranslation().getDistance(actual.getTranslation());
+            sumSquaredEstimateError += estimateError * estimateError;
+            Pose2d comparisonPose = swerve.getComparisonPose();
+            double comparisonError = comparisonPose != null ? comparisonPose.getTranslation().getDistance(actual.getTranslation()) : Double.NaN;
+            sumSquaredComparisonError += comparisonError * comparisonError;
+            samples++;
+        }
+
+        boolean finished = !CommandScheduler.getInstance().isScheduled(command);
+        CommandScheduler.getInstance().cancel(command);
+
+        double wallSeconds = (System.nanoTime() - wallStart) / 1e9;
+
+        return new Result(
+            maxError,
+            Math.sqrt(sumSquaredError / Math.max(1, samples)),
+            maxHeadingError,
+            elapsed,
+            elapsed / wallSeconds,
+            finished,
+            Math.sqrt(sumSquaredEstimateError / Math.max(1, samples)),
+            Math.sqrt(sumSquaredComparisonError / Math.max(1, samples))
+        );
+    }
+
+    /*
+     * Drives field relative along +x while spinning and returns how far off +x the robot actually went, in degrees.
+     * Without discretization the path bends toward the direction of rotation.
+     */
+    private static double measureSkew(boolean secondOrder) {
+        Swerve swerve = container.getSwerve();
+        SwerveDriveSim driveSim = container.getDriveSim();
+        swerve.setSecondOrderEnabled(secondOrder);
+
+        try {
+            swerve.drive(0.0, 0.0, 0.0, false, true);
+            step(SETTLE_TIME);
+            Pose2d start = new Pose2d(FieldLayout.FIELD_LENGTH / 4.0, FieldLayout.FIELD_WIDTH / 2.0, new Rotation2d());
+            driveSim.setPose(start);
+            swerve.setPose(start);
+
+            Command command = Commands.run(() -> swerve.drive(SKEW_SPEED, 0.0, SKEW_OMEGA, true, false), swerve)
+                .withTimeout(SKEW_TIME);
+            CommandScheduler.getInstance().schedule(command);
+            while (CommandScheduler.getInstance().isScheduled(command)) {
+                step(LOOP_PERIOD);
+            }
+
+            Pose2d end = driveSim.getPose();
+            return Math.toDegrees(Math.atan2(end.getY() - start.getY(), end.getX() - start.getX()));
+        } finally {
+            swerve.setSecondOrderEnabled(true);
+        }
+    }
+
+    /* One robot loop, the same order LoggedRobot does it in */
+    private static void step(double seconds) {
+        for (double t = 0.0; t < seconds - 1e-9; t += LOOP_PERIOD) {
+            DriverStationSim.notifyNewData();
+            DriverStation.refreshData();
+            CommandScheduler.getInstance().run();
+            for (double paced = 0.0; paced < LOOP_PERIOD - 1e-9; paced += PACE_STEP) {
+                stepPaced(PACE_STEP);
+            }
+        }
+    }
+
+    /*
+     * Steps the HAL clock once the wall clock has caught up to it. If the host falls behind it doesn't try
+     * to catch up, it just starts again from now (simSecondsPerWallSecond in the report drops below 1).
+     */
+    private static void stepPaced(double seconds) {
+        nextWallNanos = Math.max(nextWallNanos + (long) (seconds * 1e9), System.nanoTime());
+        long waitNanos;
+        while ((waitNanos = nextWallNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(waitNanos);
+        }
+        SimHooks.stepTiming(seconds);
+    }
+
+    /*
+     * Follows a WPILib trajectory through Swerve.followTrajectory(), the path Choreo autos use. The samples
+     * have no module forces, so torque current control feeds forward forces from the acceleration.
+     */
+    private static Command followTrajectory(Swerve swerve, Trajectory trajectory, boolean useTorqueCurrent) {
+        Timer timer = new Timer();
+        double heading = trajectory.getInitialPose().getRotation().getRadians();
+
+        return Commands.run(() -> {
+            Trajectory.State state = trajectory.sample(timer.get());
+            double pathAngle = state.poseMeters.getRotation().getRadians();
+            swerve.followTrajectory(new SwerveSample(
+                state.timeSeconds,
+                state.poseMeters.getX(),
+                state.poseMeters.getY(),
+                heading,
+                state.velocityMetersPerSecond * Math.cos(pathAngle),
+                state.velocityMetersPerSecond * Math.sin(pathAngle),
+                0.0,
+                state.accelerationMetersPerSecondSq * Math.cos(pathAngle),
+                state.accelerationMetersPerSecondSq * Math.sin(pathAngle),
+                0.0,
+                new double[4],
+                new double[4]
+            ), useTorqueCurrent);
+        }, swerve)
+            .beforeStarting(timer::restart)
+            .until(() -> timer.hasElapsed(trajectory.getTotalTimeSeconds()));
+    }
+}
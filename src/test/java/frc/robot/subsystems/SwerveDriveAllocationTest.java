@@ -0,0 +1,103 @@
+package frc.robot.subsystems;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import frc.robot.ModuleIO;
+import frc.robot.subsystems.Vision.Camera;
+import frc.robot.subsystems.Vision.VisionSubsystem;
+
+/*
+ * drive() runs every loop in teleop and auto, so once the JIT has warmed it up it shouldn't allocate
+ * anything. Runs the whole path (field relative rotation, discretization, the setpoint generator and
+ * the modules' cosine compensation and steer feedforward) against do-nothing IOs and checks the
+ * thread's allocated byte count doesn't move.
+ *
+ * Timing is stepped so the test decides whether the setpoint generator sees a normal loop or picks
+ * up again after sitting idle.
+ */
+public class SwerveDriveAllocationTest {
+    private static final int WARMUP_CALLS = 50_000;
+    private static final int MEASURED_CALLS = 10_000;
+
+    private static final com.sun.management.ThreadMXBean threadBean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static Swerve swerve;
+
+    @BeforeAll
+    public static void setup() {
+        HAL.initialize(500, 0);
+        SimHooks.pauseTiming();
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        swerve = new Swerve(
+            new GyroIO() {},
+            new ModuleIO() {},
+            new ModuleIO() {},
+            new ModuleIO() {},
+            new ModuleIO() {},
+            new VisionSubsystem(new Camera[0])
+        );
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        SimHooks.resumeTiming();
+    }
+
+    @Test
+    public void fieldRelativeClosedLoopDoesNotAllocate() {
+        assertNoAllocation(i -> swerve.drive(2.0, 1.0 + (i % 7) * 0.1, 1.5, true, false), TimedRobot.kDefaultPeriod);
+    }
+
+    @Test
+    public void robotRelativeOpenLoopDoesNotAllocate() {
+        assertNoAllocation(i -> swerve.drive(-1.0 + (i % 5) * 0.3, 0.5, -2.0, false, true), TimedRobot.kDefaultPeriod);
+    }
+
+    @Test
+    public void firstOrderDoesNotAllocate() {
+        swerve.setSecondOrderEnabled(false);
+        try {
+            assertNoAllocation(i -> swerve.drive(2.0, -1.0, 0.5 + (i % 3), true, false), TimedRobot.kDefaultPeriod);
+        } finally {
+            swerve.setSecondOrderEnabled(true);
+        }
+    }
+
+    @Test
+    public void setpointGeneratorResetDoesNotAllocate() {
+        /* Longer than Swerve.SETPOINT_STALE_SECONDS between calls, so the generator resets from the measured state every time */
+        assertNoAllocation(i -> swerve.drive(1.0, 2.0, -1.0, true, false), 0.2);
+    }
+
+    private interface DriveCall {
+        void run(int i);
+    }
+
+    private static void assertNoAllocation(DriveCall call, double secondsBetweenCalls) {
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            call.run(i);
+            SimHooks.stepTiming(secondsBetweenCalls);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            call.run(i);
+            SimHooks.stepTiming(secondsBetweenCalls);
+        }
+        long after = threadBean.getThreadAllocatedBytes(threadId);
+
+        assertEquals(0, after - before, "drive() allocated over " + MEASURED_CALLS + " calls");
+    }
+}
@@ -0,0 +1,52 @@
+package frc.robot.subsystems.Vision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import frc.robot.subsystems.Vision.VisionSubsystem.PoseAndTimestampAndDev;
+
+public class PoseAndTimestampAndDevStructTest {
+    private static final double EPSILON = 1e-12;
+
+    @Test
+    public void sizeMatchesSchema() {
+        /* Pose2d (3 doubles), timestamp, stdDev, averageTagDistance, then tagCount and cameraId */
+        assertEquals(56, PoseAndTimestampAndDev.struct.getSize());
+    }
+
+    @Test
+    public void roundTrip() {
+        PoseAndTimestampAndDev measurement = new PoseAndTimestampAndDev(
+            new Pose2d(3.25, -1.5, Rotation2d.fromDegrees(-135.0)),
+            12.345,
+            0.37,
+            3,
+            2.75,
+            2
+        );
+
+        /* Same byte order StructBuffer and the logger use */
+        ByteBuffer buffer = ByteBuffer.allocate(PoseAndTimestampAndDev.struct.getSize()).order(ByteOrder.LITTLE_ENDIAN);
+        PoseAndTimestampAndDev.struct.pack(buffer, measurement);
+        assertEquals(PoseAndTimestampAndDev.struct.getSize(), buffer.position());
+
+        buffer.rewind();
+        PoseAndTimestampAndDev unpacked = PoseAndTimestampAndDev.struct.unpack(buffer);
+        assertEquals(PoseAndTimestampAndDev.struct.getSize(), buffer.position());
+
+        assertEquals(measurement.getPose().getX(), unpacked.getPose().getX(), EPSILON);
+        assertEquals(measurement.getPose().getY(), unpacked.getPose().getY(), EPSILON);
+        assertEquals(measurement.getPose().getRotation().getRadians(), unpacked.getPose().getRotation().getRadians(), EPSILON);
+        assertEquals(measurement.getTimestamp(), unpacked.getTimestamp(), EPSILON);
+        assertEquals(measurement.getStdDev(), unpacked.getStdDev(), EPSILON);
+        assertEquals(measurement.getTagCount(), unpacked.getTagCount());
+        assertEquals(measurement.getAverageTagDistance(), unpacked.getAverageTagDistance(), EPSILON);
+        assertEquals(measurement.getCameraId(), unpacked.getCameraId());
+    }
+}